@@ -0,0 +1,100 @@
+package cards.ai;
+
+import java.util.Random;
+
+import cards.core.Card;
+import cards.core.CardTracker;
+import cards.core.Player;
+import cards.core.Trick;
+import cards.solver.Position;
+import cards.util.AbstractComputerPlayer;
+import cards.util.SimpleComputerPlayer;
+
+/**
+ * A computer player which plays the last few cards of each hand from a
+ * trained strategy (see CFRTrainer), choosing each card at random with the
+ * probabilities the strategy gives. A card is chosen with one lookup in the
+ * strategy's table, so in constant time. Hands too large for the strategy,
+ * and situations it never met in training, are left to a fallback player.
+ *
+ */
+public class CFRPlayer extends AbstractComputerPlayer {
+	private final CFRStrategy strategy;
+	private final AbstractComputerPlayer fallback;
+	private final Random random;
+	private final int[] trick = new int[4];
+	private final int[] order = new int[4];
+	private final int[] actions = new int[CFRStrategy.MAX_CARDS];
+
+	/**
+	 * Construct a player for the given strategy, which falls back on a
+	 * SimpleComputerPlayer.
+	 *
+	 * @param player
+	 * @param strategy
+	 */
+	public CFRPlayer(Player player, CFRStrategy strategy) {
+		this(player, strategy, new SimpleComputerPlayer(player), new Random());
+	}
+
+	/**
+	 * Construct a player for the given strategy and fallback player, which
+	 * chooses cards using the given random number generator.
+	 *
+	 * @param player
+	 * @param strategy
+	 * @param fallback
+	 * @param random
+	 */
+	public CFRPlayer(Player player, CFRStrategy strategy,
+			AbstractComputerPlayer fallback, Random random) {
+		super(player);
+		this.strategy = strategy;
+		this.fallback = fallback;
+		this.random = random;
+	}
+
+	public Card getNextCard(Trick trick) {
+		long hand = player.getHand().mask();
+		int n = Long.bitCount(hand);
+		if (n > strategy.getMaxCards()) {
+			return fallback.getNextCard(trick);
+		}
+		long legal = trick.legalMoves(player);
+		if (Long.bitCount(legal) == 1) {
+			return Card.ofIndex(Long.numberOfTrailingZeros(legal));
+		}
+		int size = trick.size();
+		for (int i = 0; i != size; ++i) {
+			this.trick[i] = trick.getCard(i).index();
+		}
+		int trumps = trick.getTrumps() == null ? Position.NO_TRUMPS
+				: trick.getTrumps().ordinal();
+		int slot = strategy.find(CFRStrategy.key(hand, trumps, this.trick,
+				size, order, actions));
+		if (slot == CFRStrategy.MISSING) {
+			return fallback.getNextCard(trick);
+		}
+		float r = random.nextFloat();
+		int a = 0;
+		while (a != n - 1 && r >= strategy.probability(slot, a)) {
+			r -= strategy.probability(slot, a);
+			a++;
+		}
+		while ((legal & (1L << actions[a])) == 0) {
+			// rounding ran past the last legal card
+			a--;
+		}
+		return Card.ofIndex(actions[a]);
+	}
+
+	public void setPlayer(Player player) {
+		super.setPlayer(player);
+		fallback.setPlayer(player);
+	}
+
+	public void setTracker(CardTracker tracker) {
+		super.setTracker(tracker);
+		fallback.setTracker(tracker);
+	}
+}
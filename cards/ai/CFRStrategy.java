@@ -0,0 +1,189 @@
+package cards.ai;
+
+import cards.solver.Position;
+
+/**
+ * A strategy for the last few cards of a hand, as trained by CFRTrainer: for
+ * each information set, the probability of playing each card in hand. It is
+ * held in primitive arrays as an open-addressed hash table, so looking up a
+ * situation takes constant time and allocates nothing. A strategy is
+ * immutable, and may be shared between threads.
+ *
+ * An information set is what a seat can see at its turn, abstracted: the
+ * cards in its hand, the cards played to the current trick and whether
+ * there are trumps. Earlier tricks are forgotten. Suits are relabelled so
+ * that situations differing only in the names of the suits are the same:
+ * trumps come first, then the suit led, then the other suits by the cards
+ * held in them. The cards in hand are sorted in this relabelling, and the
+ * actions of an information set are their places in that order.
+ *
+ */
+public final class CFRStrategy {
+	/**
+	 * Largest number of cards in hand covered by any strategy.
+	 */
+	public static final int MAX_CARDS = 3;
+	/**
+	 * Slot of a key which is not in the table.
+	 */
+	public static final int MISSING = -1;
+	static final int MAX_PROBES = 32;
+
+	private final int maxCards;
+	private final long[] keys;
+	private final float[] probabilities;	// MAX_CARDS to a slot
+
+	CFRStrategy(int maxCards, long[] keys, float[] probabilities) {
+		this.maxCards = maxCards;
+		this.keys = keys;
+		this.probabilities = probabilities;
+	}
+
+	/**
+	 * Get the largest number of cards in hand this strategy was trained for.
+	 *
+	 * @return
+	 */
+	public int getMaxCards() {
+		return maxCards;
+	}
+
+	/**
+	 * Get the number of information sets in this strategy.
+	 *
+	 * @return
+	 */
+	public int size() {
+		int n = 0;
+		for (long key : keys) {
+			if (key != 0) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Find the slot of the given information set, or MISSING.
+	 *
+	 * @param key
+	 *            --- see key().
+	 * @return
+	 */
+	public int find(long key) {
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for (int probe = 0; probe != MAX_PROBES; ++probe, i = (i + 1) & mask) {
+			long k = keys[i];
+			if (k == key) {
+				return i;
+			} else if (k == 0) {
+				return MISSING;
+			}
+		}
+		return MISSING;
+	}
+
+	/**
+	 * Get the probability of playing the card at the given place in the
+	 * sorted hand (see key()) in the information set at the given slot.
+	 *
+	 * @param slot
+	 * @param action
+	 * @return
+	 */
+	public float probability(int slot, int action) {
+		return probabilities[slot * MAX_CARDS + action];
+	}
+
+	// ========================================================
+	// Information sets
+	// ========================================================
+
+	/**
+	 * Compute the key of the information set of a seat holding the given
+	 * hand, with the given cards played to the current trick, and write the
+	 * cards of the hand into actions in the order of the actions. The hand
+	 * must hold between 1 and MAX_CARDS cards.
+	 *
+	 * @param hand
+	 *            --- card mask.
+	 * @param trumps
+	 *            --- suit ordinal, or Position.NO_TRUMPS.
+	 * @param trick
+	 *            --- card index played at each position of the trick.
+	 * @param size
+	 *            --- number of cards played to the trick.
+	 * @param order
+	 *            --- scratch space for four suits.
+	 * @param actions
+	 *            --- filled in with card indices.
+	 * @return
+	 */
+	static long key(long hand, int trumps, int[] trick, int size, int[] order,
+			int[] actions) {
+		// relabel the suits: order[suit] is its new label
+		int lead = size == 0 ? -1 : trick[0] / 13;
+		int next = 0;
+		for (int s = 0; s != 4; ++s) {
+			order[s] = -1;
+		}
+		if (trumps != Position.NO_TRUMPS) {
+			order[trumps] = next++;
+		}
+		if (lead >= 0 && order[lead] < 0) {
+			order[lead] = next++;
+		}
+		while (next != 4) {
+			int best = -1;
+			long bestSig = -1;
+			for (int s = 0; s != 4; ++s) {
+				if (order[s] < 0) {
+					long sig = ((hand >>> (13 * s)) & 0x1FFF) << 13;
+					for (int i = 0; i != size; ++i) {
+						if (trick[i] / 13 == s) {
+							sig |= 1L << (trick[i] % 13);
+						}
+					}
+					if (sig > bestSig) {
+						best = s;
+						bestSig = sig;
+					}
+				}
+			}
+			order[best] = next++;
+		}
+		// sort the hand by relabelled card, highest first
+		int n = 0;
+		for (long m = hand; m != 0; m &= m - 1) {
+			int card = Long.numberOfTrailingZeros(m);
+			int code = relabel(card, order);
+			int j = n++;
+			while (j > 0 && relabel(actions[j - 1], order) < code) {
+				actions[j] = actions[j - 1];
+				j--;
+			}
+			actions[j] = card;
+		}
+		long key = (n << 1 | (trumps == Position.NO_TRUMPS ? 0 : 1)) << 2 | size;
+		for (int i = 0; i != MAX_CARDS; ++i) {
+			key = key << 6 | (i < n ? relabel(actions[i], order) : 0);
+		}
+		for (int i = 0; i != 3; ++i) {
+			key = key << 6 | (i < size ? relabel(trick[i], order) : 0);
+		}
+		return key;
+	}
+
+	/**
+	 * Get the first slot to probe for a key.
+	 */
+	static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+
+	private static int relabel(int card, int[] order) {
+		return order[card / 13] * 13 + card % 13;
+	}
+}
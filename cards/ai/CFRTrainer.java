@@ -0,0 +1,350 @@
+package cards.ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cards.solver.Position;
+
+/**
+ * Trains a strategy (see CFRStrategy) for the short hands at the end of a
+ * game of Knock-Out Whist by counterfactual regret minimisation. Since the
+ * deals cannot all be enumerated, this uses external sampling: each
+ * iteration deals the cards at random, and for each seat in turn walks the
+ * game tree, trying every card for that seat and sampling the cards of the
+ * other seats from their current strategies. Every seat plays for its own
+ * tricks.
+ *
+ * By default the CFR+ variant is used: regrets are not allowed to fall
+ * below zero, and later iterations count for more in the average strategy,
+ * which then converges much faster. Plain CFR is available for comparison.
+ *
+ * Regrets and strategy sums are held in float arrays indexed by the slots
+ * of an open-addressed table of keys. Iterations run in parallel over a
+ * fork-join pool; keys are claimed with compare-and-set, while the sums are
+ * updated without locking, so an update is occasionally lost when two
+ * threads meet on one information set, which the averaging absorbs. Once
+ * the table is full, new information sets are played uniformly at random
+ * and not learnt.
+ *
+ */
+public class CFRTrainer {
+	/**
+	 * Number of iterations a task runs itself rather than splitting further.
+	 */
+	private static final int THRESHOLD = 256;
+	private static final int WIDTH = CFRStrategy.MAX_CARDS;
+	private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(
+			long[].class);
+
+	private final int maxCards;
+	private final boolean plus;
+	private final long[] keys;
+	private final float[] regrets;	// WIDTH to a slot
+	private final float[] strategies;	// WIDTH to a slot
+	private final ForkJoinPool pool;
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+	private long iterations;
+
+	/**
+	 * Construct a CFR+ trainer for hands of up to maxCards cards, with room
+	 * for about the given number of information sets (rounded up to a power
+	 * of two), using every available processor.
+	 *
+	 * @param maxCards
+	 * @param slots
+	 */
+	public CFRTrainer(int maxCards, int slots) {
+		this(maxCards, slots, true, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Construct a trainer with the given variant and level of parallelism.
+	 *
+	 * @param maxCards
+	 * @param slots
+	 * @param plus
+	 *            --- true for CFR+, false for plain CFR.
+	 * @param parallelism
+	 */
+	public CFRTrainer(int maxCards, int slots, boolean plus, int parallelism) {
+		if (maxCards < 1 || maxCards > CFRStrategy.MAX_CARDS) {
+			throw new IllegalArgumentException("Cards per hand must be between 1 and "
+					+ CFRStrategy.MAX_CARDS);
+		}
+		if (slots < 1 || slots > 1 << 28) {
+			throw new IllegalArgumentException("Invalid number of slots " + slots);
+		}
+		int capacity = Integer.highestOneBit(slots);
+		if (capacity < slots) {
+			capacity <<= 1;
+		}
+		this.maxCards = maxCards;
+		this.plus = plus;
+		this.keys = new long[capacity];
+		this.regrets = new float[capacity * WIDTH];
+		this.strategies = new float[capacity * WIDTH];
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Run the given number of further iterations. Iteration i deals from a
+	 * Random seeded with i, with trumps every other iteration. Hands of one
+	 * card leave no choices, so hand sizes cycle from two cards to maxCards
+	 * (unless that is one).
+	 *
+	 * @param count
+	 */
+	public void train(long count) {
+		long from = iterations;
+		pool.invoke(new TrainAll(from, from + count));
+		iterations += count;
+	}
+
+	/**
+	 * Get the number of iterations run so far.
+	 *
+	 * @return
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Export the average strategy over the iterations run so far. Information
+	 * sets in which no strategy has been recorded are left out.
+	 *
+	 * @return
+	 */
+	public CFRStrategy export() {
+		long[] k = new long[keys.length];
+		float[] p = new float[strategies.length];
+		int mask = keys.length - 1;
+		for (int i = 0; i != keys.length; ++i) {
+			long key = keys[i];
+			float sum = 0;
+			for (int a = 0; a != WIDTH; ++a) {
+				sum += strategies[i * WIDTH + a];
+			}
+			if (key == 0 || sum <= 0) {
+				continue;
+			}
+			// the same probe sequence as before, minus the keys left out
+			int j = CFRStrategy.slot(key, mask);
+			while (k[j] != 0) {
+				j = (j + 1) & mask;
+			}
+			k[j] = key;
+			for (int a = 0; a != WIDTH; ++a) {
+				p[j * WIDTH + a] = strategies[i * WIDTH + a] / sum;
+			}
+		}
+		return new CFRStrategy(maxCards, k, p);
+	}
+
+	/**
+	 * Shut down the worker threads. The trainer cannot be trained further
+	 * afterwards, but can still be exported.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Find the slot of the given key, claiming an empty slot for it if it is
+	 * new, or return CFRStrategy.MISSING if the table is too full.
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int i = CFRStrategy.slot(key, mask);
+		for (int probe = 0; probe != CFRStrategy.MAX_PROBES; ++probe, i = (i + 1) & mask) {
+			long k = (long) KEYS.getAcquire(keys, i);
+			if (k == 0) {
+				if (KEYS.compareAndSet(keys, i, 0L, key)) {
+					return i;
+				}
+				k = (long) KEYS.getAcquire(keys, i);
+			}
+			if (k == key) {
+				return i;
+			}
+		}
+		return CFRStrategy.MISSING;
+	}
+
+	// ========================================================
+	// Iterations
+	// ========================================================
+
+	/**
+	 * The position and scratch space of one thread.
+	 */
+	private final class Worker {
+		private final Random random = new Random();
+		private final Position position = new Position();
+		private final long[] hands = new long[4];
+		private final int[] deck = new int[52];
+		private final int[] trick = new int[4];
+		private final int[] order = new int[4];
+		// per ply: the cards of each action, and their strategy and values
+		private final int[][] actions = new int[4 * WIDTH][WIDTH];
+		private final float[][] sigma = new float[4 * WIDTH][WIDTH];
+		private final float[][] utility = new float[4 * WIDTH][WIDTH];
+		private float weight;
+
+		void iterate(long i) {
+			random.setSeed(i);
+			int k = maxCards == 1 ? 1 : (int) (i / 2 % (maxCards - 1)) + 2;
+			for (int c = 0; c != 52; ++c) {
+				deck[c] = c;
+			}
+			for (int s = 0; s != 4; ++s) {
+				hands[s] = 0;
+			}
+			for (int c = 0; c != 4 * k; ++c) {
+				int j = c + random.nextInt(52 - c);
+				int card = deck[j];
+				deck[j] = deck[c];
+				deck[c] = card;
+				hands[c & 3] |= 1L << card;
+			}
+			int trumps = i % 2 == 0 ? random.nextInt(4) : Position.NO_TRUMPS;
+			int leader = random.nextInt(4);
+			// CFR+ weights the average strategy by iteration
+			weight = plus ? i + 1 : 1;
+			for (int seat = 0; seat != 4; ++seat) {
+				position.set(hands, trumps, leader);
+				walk(seat, 0);
+			}
+		}
+
+		/**
+		 * Walk the tree below the current position for the given traversing
+		 * seat, returning the tricks it takes from here.
+		 */
+		private float walk(int traverser, int ply) {
+			Position p = position;
+			if (p.remaining() == 0) {
+				return p.tricks(traverser);
+			}
+			long legal = p.legalMoves();
+			if (Long.bitCount(legal) == 1) {
+				p.play(Long.numberOfTrailingZeros(legal));
+				float v = walk(traverser, ply + 1);
+				p.undo();
+				return v;
+			}
+			int size = p.trickSize();
+			for (int i = 0; i != size; ++i) {
+				trick[i] = p.trickCard(i);
+			}
+			int seat = p.toPlay();
+			int[] cards = actions[ply];
+			float[] s = sigma[ply];
+			long key = CFRStrategy.key(p.hand(seat), p.trumps(), trick, size,
+					order, cards);
+			int slot = slot(key);
+			int n = Long.bitCount(p.hand(seat));
+			strategy(slot, cards, n, legal, s);
+			if (seat == traverser) {
+				float[] u = utility[ply];
+				float value = 0;
+				for (int a = 0; a != n; ++a) {
+					if ((legal & (1L << cards[a])) != 0) {
+						p.play(cards[a]);
+						u[a] = walk(traverser, ply + 1);
+						p.undo();
+						value += s[a] * u[a];
+					}
+				}
+				if (slot != CFRStrategy.MISSING) {
+					for (int a = 0; a != n; ++a) {
+						if ((legal & (1L << cards[a])) != 0) {
+							int i = slot * WIDTH + a;
+							float r = regrets[i] + u[a] - value;
+							regrets[i] = plus ? Math.max(r, 0) : r;
+						}
+					}
+				}
+				return value;
+			}
+			if (slot != CFRStrategy.MISSING) {
+				for (int a = 0; a != n; ++a) {
+					strategies[slot * WIDTH + a] += weight * s[a];
+				}
+			}
+			float r = random.nextFloat();
+			int a = 0;
+			while (a != n - 1 && r >= s[a]) {
+				r -= s[a];
+				a++;
+			}
+			while (s[a] == 0) {
+				// rounding ran past the last legal card
+				a--;
+			}
+			p.play(cards[a]);
+			float v = walk(traverser, ply + 1);
+			p.undo();
+			return v;
+		}
+
+		/**
+		 * Compute the current strategy of a slot by regret matching: each
+		 * legal card in proportion to its positive regret, or uniformly if
+		 * there is none.
+		 */
+		private void strategy(int slot, int[] cards, int n, long legal, float[] s) {
+			float sum = 0;
+			int count = 0;
+			for (int a = 0; a != n; ++a) {
+				boolean ok = (legal & (1L << cards[a])) != 0;
+				float r = ok && slot != CFRStrategy.MISSING
+						? Math.max(regrets[slot * WIDTH + a], 0) : 0;
+				s[a] = r;
+				sum += r;
+				if (ok) {
+					count++;
+				}
+			}
+			for (int a = 0; a != n; ++a) {
+				if (sum > 0) {
+					s[a] /= sum;
+				} else {
+					s[a] = (legal & (1L << cards[a])) != 0 ? 1f / count : 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the iterations of a range.
+	 */
+	private final class TrainAll extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long from, to;
+
+		TrainAll(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				Worker w = workers.get();
+				for (long i = from; i != to; ++i) {
+					w.iterate(i);
+				}
+				return;
+			}
+			long mid = from + (to - from) / 2;
+			invokeAll(new TrainAll(from, mid), new TrainAll(mid, to));
+		}
+	}
+}
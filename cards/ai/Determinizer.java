@@ -0,0 +1,213 @@
+package cards.ai;
+
+import java.util.Random;
+
+import cards.core.Card;
+import cards.core.CardTracker;
+import cards.core.Hand;
+import cards.core.Player;
+import cards.core.Trick;
+
+/**
+ * Keeps track of what one seat has seen of the current hand, and deals the
+ * hidden cards out at random in a way that is consistent with it. This is
+ * how search players turn the position they can see into positions with
+ * every hand known ("determinizations").
+ *
+ * A seat sees only its own hand and the tricks it plays to, so the
+ * determinizer is told about each trick with observe() whenever the seat is
+ * about to play. By then the previous trick is complete, so every card
+ * played in the hand is seen. A seat which fails to follow suit is known to
+ * be void in the suit led, and is never dealt cards of it. When the game's
+ * CardTracker is available, it is read instead.
+ *
+ * A determinizer allocates nothing once constructed, and is not
+ * thread-safe.
+ *
+ */
+public final class Determinizer {
+	/**
+	 * Number of attempts at dealing around the known voids before they are
+	 * ignored.
+	 */
+	private static final int ATTEMPTS = 32;
+
+	private long played;	// cards played in this hand, including the trick
+	private int voids;	// bit seat * 4 + suit set if seat is void in suit
+	private Trick last;	// trick seen by the last call of observe()
+	private int lastSize = -1;	// size of the hand at the last call
+	private final int[] cards = new int[52];
+	private final int[] need = new int[4];
+
+	/**
+	 * Record what the given player can see as it is about to play to the
+	 * given trick. A hand which does not follow on from the last one
+	 * observed (e.g. after a new deal) starts the record afresh.
+	 *
+	 * @param player
+	 * @param trick
+	 */
+	public void observe(Player player, Trick trick) {
+		int size = player.getHand().size();
+		if (trick == last && size == lastSize) {
+			// asked again about the same play
+		} else if (size == lastSize - 1 && last != null) {
+			// the last trick seen has been completed since
+			record(last);
+		} else {
+			played = 0;
+			voids = 0;
+		}
+		record(trick);
+		last = trick;
+		lastSize = size;
+	}
+
+	/**
+	 * Record what the given player can see as it is about to play to the
+	 * given trick, taking the cards played and voids shown from the game's
+	 * tracker rather than from the tricks observed. If tracker is null, this
+	 * is the same as observe(player, trick).
+	 *
+	 * @param player
+	 * @param trick
+	 * @param tracker
+	 */
+	public void observe(Player player, Trick trick, CardTracker tracker) {
+		if (tracker == null) {
+			observe(player, trick);
+			return;
+		}
+		played = tracker.getPlayed();
+		voids = tracker.getVoids();
+		last = trick;
+		lastSize = player.getHand().size();
+	}
+
+	/**
+	 * Forget everything seen so far.
+	 */
+	public void clear() {
+		played = 0;
+		voids = 0;
+		last = null;
+		lastSize = -1;
+	}
+
+	/**
+	 * Get the cards seen played in the current hand, including those in the
+	 * current trick.
+	 *
+	 * @return a card mask (see CardMask)
+	 */
+	public long getPlayed() {
+		return played;
+	}
+
+	/**
+	 * Check whether the given seat is known to hold no cards of the given
+	 * suit.
+	 *
+	 * @param seat
+	 * @param suit
+	 * @return
+	 */
+	public boolean isVoid(int seat, int suit) {
+		return (voids & (1 << (seat * 4 + suit))) != 0;
+	}
+
+	/**
+	 * Deal the cards the given player has not seen to the other three
+	 * seats, giving each as many cards as it must hold at this point in the
+	 * trick, and write every hand (including the player's own) into hands as
+	 * card masks. Cards of a suit are not dealt to a seat known to be void
+	 * in it, unless no such deal can be found.
+	 *
+	 * @param player
+	 * @param trick
+	 * @param random
+	 * @param hands
+	 */
+	public void sample(Player player, Trick trick, Random random, long[] hands) {
+		int me = player.getDirection().ordinal();
+		long mine = player.getHand().mask();
+		long unseen = Hand.DECK_BITS & ~mine & ~played;
+		// seats which have played to this trick hold one card fewer
+		int lead = trick.getLeadPlayer().ordinal();
+		int size = Long.bitCount(mine);
+		int n = 0;
+		for (long m = unseen; m != 0; m &= m - 1) {
+			cards[n++] = Long.numberOfTrailingZeros(m);
+		}
+		for (int attempt = 0; attempt <= ATTEMPTS; ++attempt) {
+			boolean strict = attempt != ATTEMPTS;
+			int wanted = 0;
+			for (int seat = 0; seat != 4; ++seat) {
+				hands[seat] = 0;
+				need[seat] = seat == me ? 0
+						: ((seat - lead) & 3) < trick.size() ? size - 1 : size;
+				wanted += need[seat];
+			}
+			hands[me] = mine;
+			if (deal(random, n, wanted, strict, hands)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Shuffle the unseen cards and deal them one at a time, each to a seat
+	 * chosen in proportion to the cards it still needs among those which
+	 * may hold it. Returns false if a card could not be placed.
+	 */
+	private boolean deal(Random random, int n, int wanted, boolean strict,
+			long[] hands) {
+		for (int i = 0; i != n && wanted != 0; ++i) {
+			int j = i + random.nextInt(n - i);
+			int card = cards[j];
+			cards[j] = cards[i];
+			cards[i] = card;
+			int suit = card / 13;
+			int total = 0;
+			for (int seat = 0; seat != 4; ++seat) {
+				if (!strict || !isVoid(seat, suit)) {
+					total += need[seat];
+				}
+			}
+			if (total == 0) {
+				if (strict && wanted > n - i - 1) {
+					return false;
+				}
+				// more cards unseen than needed: this one stays undealt
+				continue;
+			}
+			int r = random.nextInt(total);
+			int seat = 0;
+			while (strict && isVoid(seat, suit) || r >= need[seat]) {
+				if (!strict || !isVoid(seat, suit)) {
+					r -= need[seat];
+				}
+				seat++;
+			}
+			hands[seat] |= 1L << card;
+			need[seat]--;
+			wanted--;
+		}
+		return wanted == 0;
+	}
+
+	/**
+	 * Record the cards of a trick, and any voids they show.
+	 */
+	private void record(Trick trick) {
+		Card.Suit lead = trick.getLeadSuit();
+		int first = trick.getLeadPlayer().ordinal();
+		for (int i = 0; i != trick.size(); ++i) {
+			Card c = trick.getCard(i);
+			played |= 1L << c.index();
+			if (c.suit() != lead) {
+				voids |= 1 << ((((first + i) & 3) * 4) + lead.ordinal());
+			}
+		}
+	}
+}
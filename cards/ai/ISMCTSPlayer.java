@@ -0,0 +1,241 @@
+package cards.ai;
+
+import java.util.Random;
+
+import cards.core.Card;
+import cards.core.Player;
+import cards.core.Trick;
+import cards.solver.Position;
+import cards.util.AbstractComputerPlayer;
+
+/**
+ * A computer player which chooses its cards by information set Monte Carlo
+ * tree search (single observer ISMCTS). Each iteration deals the hidden
+ * cards at random, consistent with what this seat has seen (see
+ * Determinizer), then walks a single tree of card sequences shared by every
+ * deal: choosing among the cards legal in that deal by UCB, adding one new
+ * node, and playing the rest of the hand out at random. Every seat is
+ * assumed to play for its own tricks, so each node records the share of the
+ * remaining tricks taken by the seat which played its card.
+ *
+ * Search stops after a fixed number of iterations or once a time budget is
+ * spent, whichever comes first, and the most visited card is played. The
+ * tree lives in arrays allocated once, sized by the iteration budget, so
+ * choosing a card allocates nothing. The random number generator is seeded
+ * from what the seat can see, so without a time budget the same situation
+ * always gets the same card.
+ *
+ */
+public class ISMCTSPlayer extends AbstractComputerPlayer {
+	/**
+	 * Default number of iterations per card.
+	 */
+	public static final int ITERATIONS = 2000;
+	/**
+	 * Weight of the exploration term of UCB, for rewards between 0 and 1.
+	 */
+	private static final double EXPLORATION = 0.7;
+	/**
+	 * Iterations between checks of the clock.
+	 */
+	private static final int CLOCK_INTERVAL = 16;
+	private static final int NONE = -1;
+
+	private final int iterations;
+	private final long budget;	// nanoseconds, or 0 for no limit
+	private final Determinizer determinizer = new Determinizer();
+	private final Random random = new Random();
+	private final Position position = new Position();
+	private final long[] hands = new long[4];
+	private final int[] trick = new int[4];
+	private final int[] path = new int[54];
+
+	// the node pool, node 0 being the root
+	private final byte[] card;	// card played to reach the node
+	private final byte[] mover;	// seat which played it
+	private final int[] child;	// first child, or NONE
+	private final int[] sibling;	// next sibling, or NONE
+	private final int[] visits;
+	private final int[] available;	// iterations in which the card was legal
+	private final double[] reward;	// total reward of the mover
+	private int nodes;
+
+	/**
+	 * Construct a player which searches ITERATIONS iterations per card.
+	 *
+	 * @param player
+	 */
+	public ISMCTSPlayer(Player player) {
+		this(player, ITERATIONS, 0);
+	}
+
+	/**
+	 * Construct a player which searches for at most the given number of
+	 * iterations and milliseconds per card.
+	 *
+	 * @param player
+	 * @param iterations
+	 * @param millis
+	 *            --- time budget, or 0 for no time limit.
+	 */
+	public ISMCTSPlayer(Player player, int iterations, long millis) {
+		super(player);
+		if (iterations < 1 || millis < 0) {
+			throw new IllegalArgumentException("Invalid search budget");
+		}
+		this.iterations = iterations;
+		this.budget = millis * 1000000L;
+		// every iteration adds at most one node
+		int capacity = iterations + 1;
+		card = new byte[capacity];
+		mover = new byte[capacity];
+		child = new int[capacity];
+		sibling = new int[capacity];
+		visits = new int[capacity];
+		available = new int[capacity];
+		reward = new double[capacity];
+	}
+
+	public Card getNextCard(Trick trick) {
+		determinizer.observe(player, trick, tracker);
+		long legal = trick.legalMoves(player);
+		if (Long.bitCount(legal) == 1) {
+			return Card.ofIndex(Long.numberOfTrailingZeros(legal));
+		}
+		long deadline = System.nanoTime() + budget;
+		random.setSeed(player.getHand().mask() * 31 + trick.hash()
+				^ determinizer.getPlayed() * 0x9E3779B97F4A7C15L);
+		int trumps = trick.getTrumps() == null ? Position.NO_TRUMPS
+				: trick.getTrumps().ordinal();
+		int leader = trick.getLeadPlayer().ordinal();
+		int size = trick.size();
+		for (int i = 0; i != size; ++i) {
+			this.trick[i] = trick.getCard(i).index();
+		}
+		int seat = player.getDirection().ordinal();
+		int total = player.getHand().size();
+		newNode(NONE, seat);
+		for (int i = 0; i != iterations; ++i) {
+			if (budget != 0 && i % CLOCK_INTERVAL == CLOCK_INTERVAL - 1
+					&& System.nanoTime() - deadline >= 0) {
+				break;
+			}
+			determinizer.sample(player, trick, random, hands);
+			position.set(hands, trumps, leader, this.trick, size);
+			iterate(total);
+		}
+		int best = NONE;
+		for (int c = child[0]; c != NONE; c = sibling[c]) {
+			if (best == NONE || visits[c] > visits[best]) {
+				best = c;
+			}
+		}
+		return Card.ofIndex(card[best]);
+	}
+
+	// ========================================================
+	// Search
+	// ========================================================
+
+	/**
+	 * Run one iteration from the current determinization, in which total
+	 * tricks are left to play.
+	 */
+	private void iterate(int total) {
+		int node = 0;
+		int depth = 0;
+		path[depth++] = node;
+		// selection and expansion
+		while (position.remaining() != 0) {
+			long legal = position.legalMoves();
+			long tried = 0;
+			for (int c = child[node]; c != NONE; c = sibling[c]) {
+				if ((legal & (1L << card[c])) != 0) {
+					tried |= 1L << card[c];
+					available[c]++;
+				}
+			}
+			long untried = legal & ~tried;
+			if (untried != 0 && nodes < card.length) {
+				int move = pick(untried);
+				node = newNode(node, move);
+				position.play(move);
+				path[depth++] = node;
+				break;
+			}
+			if (tried == 0) {
+				break;
+			}
+			node = select(node, legal);
+			position.play(card[node]);
+			path[depth++] = node;
+		}
+		// simulation
+		while (position.remaining() != 0) {
+			position.play(pick(position.legalMoves()));
+		}
+		// backpropagation
+		for (int i = 0; i != depth; ++i) {
+			int n = path[i];
+			visits[n]++;
+			reward[n] += (double) position.tricks(mover[n]) / total;
+		}
+	}
+
+	/**
+	 * Choose the child of node, among those legal now, with the best upper
+	 * confidence bound for the seat to play.
+	 */
+	private int select(int node, long legal) {
+		int best = NONE;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int c = child[node]; c != NONE; c = sibling[c]) {
+			if ((legal & (1L << card[c])) == 0) {
+				continue;
+			}
+			double value = reward[c] / visits[c]
+					+ EXPLORATION * Math.sqrt(Math.log(available[c]) / visits[c]);
+			if (value > bestValue) {
+				best = c;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Take a node from the pool for the given card, played by the seat to
+	 * play in the current determinization, and link it below parent. With
+	 * no parent, the pool is emptied and the node becomes the root.
+	 */
+	private int newNode(int parent, int move) {
+		int n;
+		if (parent == NONE) {
+			n = 0;
+			nodes = 1;
+			card[n] = (byte) NONE;
+			mover[n] = (byte) move;
+		} else {
+			n = nodes++;
+			card[n] = (byte) move;
+			mover[n] = (byte) position.toPlay();
+			sibling[n] = child[parent];
+			child[parent] = n;
+		}
+		child[n] = NONE;
+		visits[n] = 0;
+		available[n] = 1;
+		reward[n] = 0;
+		return n;
+	}
+
+	/**
+	 * Pick a card uniformly at random from a non-empty card mask.
+	 */
+	private int pick(long cards) {
+		for (int i = random.nextInt(Long.bitCount(cards)); i != 0; --i) {
+			cards &= cards - 1;
+		}
+		return Long.numberOfTrailingZeros(cards);
+	}
+}
@@ -0,0 +1,294 @@
+package cards.ai;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cards.core.Card;
+import cards.core.Hand;
+import cards.core.Player;
+import cards.core.Trick;
+import cards.solver.Canonicalizer;
+import cards.solver.DoubleDummySolver;
+import cards.solver.HeapTranspositionTable;
+import cards.solver.Position;
+import cards.util.AbstractComputerPlayer;
+
+/**
+ * A computer player which chooses its cards by perfect information Monte
+ * Carlo: it deals the hidden cards at random many times, consistent with
+ * what this seat has seen (see Determinizer), scores every card it could
+ * play in each deal as if all the hands were known, and plays the card with
+ * the best total.
+ *
+ * With few enough tricks left, a card is scored by the exact number of
+ * tricks this seat takes double dummy against the other three (see
+ * DoubleDummySolver). Earlier in the hand, that is too slow, so the hand is
+ * instead played out with a quick greedy policy. Deals are scored in
+ * parallel over a fork-join pool, each thread keeping its own solver.
+ *
+ * Without a latency target, a fixed number of deals is scored, and since
+ * the deals are drawn from a generator seeded with what the seat can see,
+ * the same situation always gets the same card. With a target, deals are
+ * scored in batches, each sized from the rate achieved so far to fill the
+ * time left, up to the maximum number of deals. The first batch has one
+ * deal for each thread of the pool, so a very short target can be missed.
+ *
+ */
+public class PIMCPlayer extends AbstractComputerPlayer {
+	/**
+	 * Default maximum number of deals scored per card.
+	 */
+	public static final int SAMPLES = 64;
+	/**
+	 * Largest number of tricks left at which cards are scored double dummy
+	 * rather than by playing out.
+	 */
+	public static final int EXACT_TRICKS = 7;
+
+	private static final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+
+	private final int samples;
+	private final long target;	// nanoseconds, or 0 for none
+	private final ForkJoinPool pool;
+	private final Determinizer determinizer = new Determinizer();
+	private final Random random = new Random();
+	private final long[] hands = new long[4];
+
+	// the current decision, read by the tasks scoring deals
+	private final long[] deals;	// four hands per deal
+	private final int[] values;	// tricks per deal and candidate
+	private final int[] candidates = new int[13];
+	private final int[] trick = new int[4];
+	private int candidateCount;
+	private int seat, trumps, leader, size;
+
+	/**
+	 * Construct a player which scores SAMPLES deals per card, using the
+	 * common fork-join pool.
+	 *
+	 * @param player
+	 */
+	public PIMCPlayer(Player player) {
+		this(player, SAMPLES, 0);
+	}
+
+	/**
+	 * Construct a player which scores up to the given number of deals per
+	 * card, stopping early to choose within the given number of
+	 * milliseconds, using the common fork-join pool.
+	 *
+	 * @param player
+	 * @param samples
+	 * @param millis
+	 *            --- latency target, or 0 to always score every deal.
+	 */
+	public PIMCPlayer(Player player, int samples, long millis) {
+		this(player, samples, millis, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Construct a player which scores deals in the given pool.
+	 *
+	 * @param player
+	 * @param samples
+	 * @param millis
+	 *            --- latency target, or 0 to always score every deal.
+	 * @param pool
+	 */
+	public PIMCPlayer(Player player, int samples, long millis, ForkJoinPool pool) {
+		super(player);
+		if (samples < 1 || millis < 0) {
+			throw new IllegalArgumentException("Invalid sampling budget");
+		}
+		this.samples = samples;
+		this.target = millis * 1000000L;
+		this.pool = pool;
+		this.deals = new long[samples * 4];
+		this.values = new int[samples * 13];
+	}
+
+	public Card getNextCard(Trick trick) {
+		long start = System.nanoTime();
+		determinizer.observe(player, trick, tracker);
+		long legal = trick.legalMoves(player);
+		long trickMask = 0;
+		size = trick.size();
+		for (int i = 0; i != size; ++i) {
+			this.trick[i] = trick.getCard(i).index();
+			trickMask |= 1L << this.trick[i];
+		}
+		// cards with only played cards between them are worth the same
+		long live = Hand.DECK_BITS & ~(determinizer.getPlayed() & ~trickMask);
+		long moves = Canonicalizer.representatives(legal, live);
+		if (Long.bitCount(moves) == 1) {
+			return Card.ofIndex(Long.numberOfTrailingZeros(moves));
+		}
+		candidateCount = 0;
+		for (long m = moves; m != 0; m &= m - 1) {
+			candidates[candidateCount++] = Long.numberOfTrailingZeros(m);
+		}
+		seat = player.getDirection().ordinal();
+		trumps = trick.getTrumps() == null ? Position.NO_TRUMPS
+				: trick.getTrumps().ordinal();
+		leader = trick.getLeadPlayer().ordinal();
+		random.setSeed(player.getHand().mask() * 31 + trick.hash()
+				^ determinizer.getPlayed() * 0x9E3779B97F4A7C15L);
+		int done = 0;
+		while (done < samples) {
+			int batch = batchSize(done, start);
+			if (batch == 0) {
+				break;
+			}
+			for (int i = done; i != done + batch; ++i) {
+				determinizer.sample(player, trick, random, hands);
+				System.arraycopy(hands, 0, deals, i * 4, 4);
+			}
+			pool.invoke(new Score(done, done + batch));
+			done += batch;
+		}
+		int best = 0;
+		int bestTotal = -1;
+		for (int j = 0; j != candidateCount; ++j) {
+			int total = 0;
+			for (int i = 0; i != done; ++i) {
+				total += values[i * 13 + j];
+			}
+			if (total > bestTotal) {
+				best = j;
+				bestTotal = total;
+			}
+		}
+		return Card.ofIndex(candidates[best]);
+	}
+
+	/**
+	 * Decide how many deals to score next, given the number scored so far
+	 * and when the decision started.
+	 */
+	private int batchSize(int done, long start) {
+		int left = samples - done;
+		if (target == 0) {
+			return left;
+		}
+		if (done == 0) {
+			return Math.min(left, pool.getParallelism());
+		}
+		// aim to use half the time left, since deals vary a lot in cost
+		long now = System.nanoTime();
+		long perDeal = Math.max(1, (now - start) / done);
+		return (int) Math.min(left, Math.max(0, start + target - now) / perDeal / 2);
+	}
+
+	/**
+	 * Score one deal, filling in the tricks this seat takes after playing
+	 * each candidate.
+	 */
+	private void score(Worker w, int deal) {
+		System.arraycopy(deals, deal * 4, w.hands, 0, 4);
+		Position p = w.position;
+		for (int j = 0; j != candidateCount; ++j) {
+			p.set(w.hands, trumps, leader, trick, size);
+			p.play(candidates[j]);
+			int tricks;
+			if (p.remaining() == 0) {
+				tricks = p.tricks(seat);
+			} else if (p.tricksLeft() <= EXACT_TRICKS) {
+				tricks = p.tricks(seat) + w.solver.solve(p, 1 << seat);
+			} else {
+				playOut(p);
+				tricks = p.tricks(seat);
+			}
+			values[deal * 13 + j] = tricks;
+		}
+	}
+
+	/**
+	 * Play the rest of the hand out greedily: the leader plays its highest
+	 * card, and every other seat plays its lowest card which would take the
+	 * lead if it has one, and otherwise its lowest card.
+	 */
+	private static void playOut(Position p) {
+		while (p.remaining() != 0) {
+			long legal = p.legalMoves();
+			int card;
+			if (p.trickSize() == 0) {
+				card = 63 - Long.numberOfLeadingZeros(highest(legal));
+			} else {
+				card = -1;
+				for (long m = legal; m != 0 && card < 0; m &= m - 1) {
+					int c = Long.numberOfTrailingZeros(m);
+					if (p.beats(c)) {
+						card = c;
+					}
+				}
+				if (card < 0) {
+					card = Long.numberOfTrailingZeros(lowest(legal));
+				}
+			}
+			p.play(card);
+		}
+	}
+
+	/**
+	 * Get the cards of the highest rank present in any suit of the mask.
+	 */
+	private static long highest(long cards) {
+		for (int rank = 12; rank != 0; --rank) {
+			long m = cards & (0x0008004002001L << rank);
+			if (m != 0) {
+				return m;
+			}
+		}
+		return cards & 0x0008004002001L;
+	}
+
+	/**
+	 * Get the cards of the lowest rank present in any suit of the mask.
+	 */
+	private static long lowest(long cards) {
+		for (int rank = 0; rank != 12; ++rank) {
+			long m = cards & (0x0008004002001L << rank);
+			if (m != 0) {
+				return m;
+			}
+		}
+		return cards & (0x0008004002001L << 12);
+	}
+
+	/**
+	 * The solver and scratch space of one thread.
+	 */
+	private static final class Worker {
+		private final DoubleDummySolver solver = new DoubleDummySolver(
+				new HeapTranspositionTable(1 << 16));
+		private final Position position = new Position();
+		private final long[] hands = new long[4];
+	}
+
+	/**
+	 * Scores the deals of a range.
+	 */
+	private final class Score extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to;
+
+		Score(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from == 1) {
+				score(workers.get(), from);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Score(from, mid), new Score(mid, to));
+		}
+	}
+}
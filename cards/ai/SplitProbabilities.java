@@ -0,0 +1,503 @@
+package cards.ai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cards.core.Card;
+import cards.core.CardTracker;
+import cards.core.Player;
+import cards.core.Trick;
+
+/**
+ * Computes exactly how likely each way of splitting the unseen cards between
+ * the other seats is, given how many cards each seat still holds and the
+ * suits they are known to be void in. Every deal of the unseen cards which
+ * fits these constraints is taken to be equally likely, and the deals are
+ * counted rather than sampled, so the results have no noise.
+ *
+ * Only the number of unseen cards in each suit matters, not which cards
+ * they are, and nor does which suit is which, so the results (see
+ * Distribution) are cached by a signature of the suit counts, hand sizes
+ * and voids, with the suits sorted. The same signature comes up again and
+ * again over a game, so many lookups need no counting at all. A cache may
+ * be shared by any number of players and threads.
+ *
+ * Counting runs through the suits in turn, keeping the number of deals
+ * which leave each seat with a given number of cards still to fill, and
+ * multiplying by binomial coefficients from a table for each way of sharing
+ * out the next suit. Unseen cards beyond those the seats must hold (e.g.
+ * those not dealt in a short hand) are put aside in a stock, which is never
+ * void.
+ *
+ */
+public final class SplitProbabilities {
+	/**
+	 * Binomial coefficients, BINOMIAL[n][k] = n choose k, for up to the 13
+	 * cards of a suit.
+	 */
+	private static final double[][] BINOMIAL = new double[14][14];
+
+	static {
+		for (int n = 0; n != 14; ++n) {
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k <= n; ++k) {
+				BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+			}
+		}
+	}
+
+	private final LinkedHashMap<Long, Table> cache;
+
+	/**
+	 * Construct a calculator which caches the results for up to 4096
+	 * signatures.
+	 */
+	public SplitProbabilities() {
+		this(4096);
+	}
+
+	/**
+	 * Construct a calculator which caches the results for up to the given
+	 * number of signatures, discarding those used least recently.
+	 *
+	 * @param capacity
+	 */
+	public SplitProbabilities(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid cache size");
+		}
+		cache = new LinkedHashMap<Long, Table>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, Table> e) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Get the distribution of the cards the given player has not seen, as
+	 * it is about to play to the given trick. The other seats hold as many
+	 * cards as they must at this point in the trick, and the voids are those
+	 * the tracker knows of.
+	 *
+	 * @param player
+	 * @param trick
+	 * @param tracker
+	 * @return
+	 */
+	public Distribution compute(Player player, Trick trick, CardTracker tracker) {
+		int me = player.getDirection().ordinal();
+		int size = player.getHand().size();
+		int lead = trick.getLeadPlayer().ordinal();
+		int[] sizes = new int[4];
+		for (int seat = 0; seat != 4; ++seat) {
+			// seats which have played to this trick hold one card fewer
+			sizes[seat] = seat == me ? 0
+					: ((seat - lead) & 3) < trick.size() ? size - 1 : size;
+		}
+		return compute(tracker.getUnseen(player), sizes,
+				tracker.getVoids() & ~(0xF << (me * 4)));
+	}
+
+	/**
+	 * Get the distribution of the given unseen cards, of which each seat
+	 * holds the number given in sizes (indexed by direction ordinal), and the
+	 * rest are in the stock. A seat whose bit seat * 4 + suit is set in voids
+	 * holds no cards of the suit (see CardTracker.getVoids()). If no deal
+	 * fits the voids, they are ignored.
+	 *
+	 * @param unseen
+	 *            --- a card mask (see CardMask)
+	 * @param sizes
+	 * @param voids
+	 * @return
+	 */
+	public Distribution compute(long unseen, int[] sizes, int voids) {
+		int[] suits = new int[4];
+		int total = 0;
+		for (int suit = 0; suit != 4; ++suit) {
+			suits[suit] = Long.bitCount(unseen & (0x1FFFL << (suit * 13)));
+			total += suits[suit];
+		}
+		for (int seat = 0; seat != 4; ++seat) {
+			if (sizes[seat] < 0 || sizes[seat] > 13) {
+				throw new IllegalArgumentException("Invalid hand size");
+			}
+			total -= sizes[seat];
+		}
+		if (total < 0) {
+			throw new IllegalArgumentException("Too few unseen cards");
+		}
+		// voids of seats holding nothing, or in suits with nothing unseen,
+		// make no difference
+		for (int bit = 0; bit != 16; ++bit) {
+			if (sizes[bit >>> 2] == 0 || suits[bit & 3] == 0) {
+				voids &= ~(1 << bit);
+			}
+		}
+		// suits are interchangeable here, so they are put in order of their
+		// unseen cards and voids, and the results are mapped back
+		int[] rank = new int[4];
+		for (int suit = 0; suit != 4; ++suit) {
+			rank[suit] = suits[suit] << 4 | column(voids, suit);
+		}
+		int[] order = new int[4];	// canonical position of each suit
+		for (int suit = 0; suit != 4; ++suit) {
+			for (int other = 0; other != 4; ++other) {
+				if (rank[other] < rank[suit]
+						|| (rank[other] == rank[suit] && other < suit)) {
+					order[suit]++;
+				}
+			}
+		}
+		int[] canonical = new int[4];
+		int canonicalVoids = 0;
+		for (int suit = 0; suit != 4; ++suit) {
+			canonical[order[suit]] = suits[suit];
+			for (int seat = 0; seat != 4; ++seat) {
+				if (isVoid(voids, seat, suit)) {
+					canonicalVoids |= 1 << (seat * 4 + order[suit]);
+				}
+			}
+		}
+		long key = (long) canonicalVoids << 32;
+		for (int i = 0; i != 4; ++i) {
+			key |= (long) canonical[i] << (i * 4) | (long) sizes[i] << (16 + i * 4);
+		}
+		Table t;
+		synchronized (cache) {
+			t = cache.get(key);
+		}
+		if (t == null) {
+			t = new Table(canonical, sizes, canonicalVoids);
+			if (t.deals == 0) {
+				t = new Table(canonical, sizes, 0);
+			}
+			synchronized (cache) {
+				cache.put(key, t);
+			}
+		}
+		return new Distribution(t, order);
+	}
+
+	/**
+	 * Get the number of signatures whose results are cached.
+	 *
+	 * @return
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Discard every cached result.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	// ========================================================
+	// Distribution
+	// ========================================================
+
+	/**
+	 * The exact probabilities of the ways the unseen cards can be split, for
+	 * one signature, with the suits in canonical order. This is immutable
+	 * once constructed, so is shared between threads.
+	 */
+	private static final class Table {
+		private final int[] suits = new int[4];	// unseen cards per suit
+		private final int[] sizes = new int[4];	// cards held per seat
+		private final double deals;
+		/**
+		 * The probability of each split of a suit between the seats, with
+		 * seat counts in mixed radix, each digit running to the smaller of
+		 * the seat's hand and the suit's unseen cards.
+		 */
+		private final double[][] splits = new double[4][];
+		private final int[][] radix = new int[4][4];
+		/**
+		 * The probability a seat holds exactly a given number of cards of a
+		 * suit, indexed by seat * 4 + suit then count.
+		 */
+		private final double[][] counts = new double[16][14];
+		private final double[] expected = new double[16];
+
+		Table(int[] suits, int[] sizes, int voids) {
+			System.arraycopy(suits, 0, this.suits, 0, 4);
+			System.arraycopy(sizes, 0, this.sizes, 0, 4);
+			// a state is the number of cards each seat has still to fill, in
+			// mixed radix; the stock's is whatever is left
+			int[] base = new int[4];
+			int states = 1;
+			for (int seat = 0; seat != 4; ++seat) {
+				base[seat] = states;
+				states *= sizes[seat] + 1;
+			}
+			int start = states - 1;
+			// left[s]: unseen cards in suits from s on, and room[s][seat]:
+			// those of them the seat may hold
+			int[] left = new int[5];
+			int[][] room = new int[5][4];
+			for (int suit = 3; suit >= 0; --suit) {
+				left[suit] = left[suit + 1] + suits[suit];
+				for (int seat = 0; seat != 4; ++seat) {
+					room[suit][seat] = room[suit + 1][seat]
+							+ (isVoid(voids, seat, suit) ? 0 : suits[suit]);
+				}
+			}
+			for (int suit = 0; suit != 4; ++suit) {
+				int n = 1;
+				for (int seat = 0; seat != 4; ++seat) {
+					radix[suit][seat] = n;
+					n *= Math.min(sizes[seat], suits[suit]) + 1;
+				}
+				splits[suit] = new double[n];
+			}
+			// forward[s][r]: ways to share out suits before s leaving r
+			// backward[s][r]: ways to share out suits from s given r, only
+			// for the states r which can be reached
+			double[][] forward = new double[5][states];
+			double[][] backward = new double[5][states];
+			int[] bounds = new int[8];
+			forward[0][start] = 1;
+			for (int suit = 0; suit != 4; ++suit) {
+				for (int r = 0; r != states; ++r) {
+					if (forward[suit][r] != 0) {
+						share(suit, r, base, left, room[suit + 1], voids, bounds,
+								forward[suit][r], forward[suit + 1], null);
+					}
+				}
+			}
+			backward[4][0] = 1;
+			for (int suit = 3; suit >= 0; --suit) {
+				for (int r = 0; r != states; ++r) {
+					if (forward[suit][r] != 0) {
+						backward[suit][r] = share(suit, r, base, left, room[suit + 1],
+								voids, bounds, forward[suit][r], null, backward[suit + 1]);
+					}
+				}
+			}
+			deals = backward[0][start];
+			if (deals == 0) {
+				return;
+			}
+			for (int suit = 0; suit != 4; ++suit) {
+				double[] split = splits[suit];
+				for (int i = 0; i != split.length; ++i) {
+					split[i] /= deals;
+				}
+			}
+			for (int i = 0; i != 16; ++i) {
+				expected[i] /= deals;
+				for (int c = 0; c != 14; ++c) {
+					counts[i][c] /= deals;
+				}
+			}
+		}
+
+		/**
+		 * Go through every way of sharing out the given suit from state r
+		 * which leaves each seat and the stock no more cards to fill than the
+		 * later suits can, counting the ways to choose its cards. Going
+		 * forward (next given), each is added to the state it leads to, times
+		 * the given weight, the number of ways to reach r. Going backward,
+		 * each is multiplied by the ways to share out the later suits from
+		 * there, and its split is credited with that times the weight, and
+		 * the total is returned.
+		 */
+		private double share(int suit, int r, int[] base, int[] left, int[] room,
+				int voids, int[] bounds, double weight, double[] next, double[] later) {
+			int n = suits[suit];
+			int stock = left[suit];
+			for (int seat = 0; seat != 4; ++seat) {
+				int rem = r / base[seat] % (sizes[seat] + 1);
+				stock -= rem;
+				bounds[seat] = Math.max(0, rem - room[seat]);
+				bounds[seat + 4] = isVoid(voids, seat, suit) ? 0 : Math.min(rem, n);
+				if (bounds[seat] > bounds[seat + 4]) {
+					return 0;
+				}
+			}
+			if (stock < 0) {
+				return 0;
+			}
+			int lo0 = bounds[0], lo1 = bounds[1], lo2 = bounds[2], lo3 = bounds[3];
+			int hi0 = bounds[4], hi1 = bounds[5], hi2 = bounds[6], hi3 = bounds[7];
+			int stockLo = Math.max(0, stock - left[suit + 1]);
+			// the least and most cards the seats after each one can take
+			int after3Lo = stockLo, after3Hi = stock;
+			int after2Lo = after3Lo + lo3, after2Hi = after3Hi + hi3;
+			int after1Lo = after2Lo + lo2, after1Hi = after2Hi + hi2;
+			int after0Lo = after1Lo + lo1, after0Hi = after1Hi + hi1;
+			int[] radix = this.radix[suit];
+			double[] split = splits[suit];
+			double total = 0;
+			for (int y0 = Math.max(lo0, n - after0Hi); y0 <= Math.min(hi0, n - after0Lo); ++y0) {
+				double w0 = BINOMIAL[n][y0];
+				int n0 = n - y0;
+				int to0 = r - y0 * base[0];
+				int i0 = y0 * radix[0];
+				for (int y1 = Math.max(lo1, n0 - after1Hi); y1 <= Math.min(hi1, n0 - after1Lo); ++y1) {
+					double w1 = w0 * BINOMIAL[n0][y1];
+					int n1 = n0 - y1;
+					int to1 = to0 - y1 * base[1];
+					int i1 = i0 + y1 * radix[1];
+					for (int y2 = Math.max(lo2, n1 - after2Hi); y2 <= Math.min(hi2, n1 - after2Lo); ++y2) {
+						double w2 = w1 * BINOMIAL[n1][y2];
+						int n2 = n1 - y2;
+						int to2 = to1 - y2 * base[2];
+						int i2 = i1 + y2 * radix[2];
+						for (int y3 = Math.max(lo3, n2 - after3Hi); y3 <= Math.min(hi3, n2 - after3Lo); ++y3) {
+							double w = w2 * BINOMIAL[n2][y3];
+							int to = to2 - y3 * base[3];
+							if (next != null) {
+								next[to] += weight * w;
+								continue;
+							}
+							w *= later[to];
+							if (w == 0) {
+								continue;
+							}
+							total += w;
+							// tally the deals through this split, which are
+							// divided by the whole number once it is known
+							double d = weight * w;
+							split[i2 + y3 * radix[3]] += d;
+							counts[suit][y0] += d;
+							counts[4 + suit][y1] += d;
+							counts[8 + suit][y2] += d;
+							counts[12 + suit][y3] += d;
+							expected[suit] += y0 * d;
+							expected[4 + suit] += y1 * d;
+							expected[8 + suit] += y2 * d;
+							expected[12 + suit] += y3 * d;
+						}
+					}
+				}
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * The exact probabilities of the ways the unseen cards can be split, as
+	 * computed for one call of compute(). This is immutable, so can be
+	 * shared freely.
+	 *
+	 */
+	public static final class Distribution {
+		private final Table table;
+		private final int[] order;	// position of each suit in the table
+
+		Distribution(Table table, int[] order) {
+			this.table = table;
+			this.order = order;
+		}
+
+		/**
+		 * Get the number of deals of the unseen cards which fit the
+		 * constraints.
+		 *
+		 * @return
+		 */
+		public double getDeals() {
+			return table.deals;
+		}
+
+		/**
+		 * Get the probability that the given seat holds exactly the given
+		 * number of the unseen cards of the given suit.
+		 *
+		 * @param seat
+		 * @param suit
+		 * @param count
+		 * @return
+		 */
+		public double probability(Player.Direction seat, Card.Suit suit, int count) {
+			if (count < 0 || count > 13) {
+				return 0;
+			}
+			return table.counts[seat.ordinal() * 4 + order[suit.ordinal()]][count];
+		}
+
+		/**
+		 * Get the probability that the given seat holds the given card, which
+		 * should be one of the unseen cards this distribution was computed
+		 * for. All unseen cards of a suit are equally likely to be anywhere,
+		 * so this is the seat's expected share of the suit.
+		 *
+		 * @param seat
+		 * @param card
+		 * @return
+		 */
+		public double probability(Player.Direction seat, Card card) {
+			int suit = order[card.suit().ordinal()];
+			if (table.suits[suit] == 0) {
+				return 0;
+			}
+			return table.expected[seat.ordinal() * 4 + suit] / table.suits[suit];
+		}
+
+		/**
+		 * Get the number of unseen cards of the given suit the given seat is
+		 * expected to hold.
+		 *
+		 * @param seat
+		 * @param suit
+		 * @return
+		 */
+		public double expected(Player.Direction seat, Card.Suit suit) {
+			return table.expected[seat.ordinal() * 4 + order[suit.ordinal()]];
+		}
+
+		/**
+		 * Get the probability that the unseen cards of the given suit are
+		 * split between the seats exactly as given, with counts indexed by
+		 * direction ordinal. Any cards left over are in the stock.
+		 *
+		 * @param suit
+		 * @param counts
+		 * @return
+		 */
+		public double split(Card.Suit suit, int... counts) {
+			int s = order[suit.ordinal()];
+			int i = 0;
+			for (int seat = 0; seat != 4; ++seat) {
+				int c = counts[seat];
+				if (c < 0 || c > Math.min(table.sizes[seat], table.suits[s])) {
+					return 0;
+				}
+				i += c * table.radix[s][seat];
+			}
+			return table.splits[s][i];
+		}
+
+		/**
+		 * Get the number of unseen cards of the given suit.
+		 *
+		 * @param suit
+		 * @return
+		 */
+		public int getUnseen(Card.Suit suit) {
+			return table.suits[order[suit.ordinal()]];
+		}
+	}
+
+	private static boolean isVoid(int voids, int seat, int suit) {
+		return (voids & (1 << (seat * 4 + suit))) != 0;
+	}
+
+	/**
+	 * Get the seats void in the given suit, with bit seat set for each.
+	 */
+	private static int column(int voids, int suit) {
+		return ((voids >>> suit) & 1) | ((voids >>> (suit + 3)) & 2)
+				| ((voids >>> (suit + 6)) & 4) | ((voids >>> (suit + 9)) & 8);
+	}
+}
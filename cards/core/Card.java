@@ -47,20 +47,71 @@ public class Card implements Comparable<Card>, Serializable {
 	// Card stuff
 	// =======================================================
 	
-	private Suit suit; // HEARTS, CLUBS, DIAMONDS, SPADES
-	private Rank rank; // 2 <= number <= 14 (ACE)
-	
+	private final Suit suit; // HEARTS, CLUBS, DIAMONDS, SPADES
+	private final Rank rank; // 2 <= number <= 14 (ACE)
+	private final int index; // suit * 13 + rank, between 0 and 51
+
 	/**
-	 * Construct a card in the given suit, with a given number
+	 * The canonical instance of every card, indexed by suit * 13 + rank.
+	 */
+	private static final Card[] DECK = new Card[52];
+
+	static {
+		for (Suit suit : Suit.values()) {
+			for (Rank rank : Rank.values()) {
+				Card c = new Card(suit, rank);
+				DECK[c.index] = c;
+			}
+		}
+	}
+
+	/**
+	 * Construct a card in the given suit, with a given number. Only used to
+	 * build the canonical table; use Card.of() to obtain a card.
 	 * 
 	 * @param suit
 	 *            --- between 0 (HEARTS) and 3 (SPADES)
 	 * @param number
 	 *            --- between 2 and 14 (ACE)
 	 */
-	public Card(Suit suit, Rank number) {				
+	private Card(Suit suit, Rank number) {
 		this.suit = suit;
 		this.rank = number;
+		this.index = suit.ordinal() * 13 + number.ordinal();
+	}
+
+	/**
+	 * Get the canonical card in the given suit, with a given number. There is
+	 * exactly one instance of each card, so cards can be compared by
+	 * reference.
+	 * 
+	 * @param suit
+	 * @param rank
+	 * @return
+	 */
+	public static Card of(Suit suit, Rank rank) {
+		return DECK[suit.ordinal() * 13 + rank.ordinal()];
+	}
+
+	/**
+	 * Get the canonical card with the given index (see index()).
+	 * 
+	 * @param index
+	 *            --- between 0 and 51
+	 * @return
+	 */
+	public static Card ofIndex(int index) {
+		return DECK[index];
+	}
+
+	/**
+	 * Get the dense index of this card, which is suit * 13 + rank and lies
+	 * between 0 (2 of Hearts) and 51 (Ace of Spades).
+	 * 
+	 * @return
+	 */
+	public int index() {
+		return index;
 	}
 
 	/**
@@ -100,16 +151,9 @@ public class Card implements Comparable<Card>, Serializable {
 	 * 
 	 */
 	public int compareTo(Card o) {
-		//compare suit first
-		int suitRank = this.suit().compareTo(o.suit());
-		//if they're equal
-		if (suitRank == 0) {
-			//return result of rank comparison
-			return this.rank().compareTo(o.rank());
-		}
-		
-		//return result of suit comparison if suit of both cards not equal 
-		return suitRank;
+		//suit is the high part of the index, so this compares suit first and
+		//then rank
+		return Integer.compare(index, o.index);
 	}
 
 	/* (non-Javadoc)
@@ -117,11 +161,7 @@ public class Card implements Comparable<Card>, Serializable {
 	 */
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((rank == null) ? 0 : rank.hashCode());
-		result = prime * result + ((suit == null) ? 0 : suit.hashCode());
-		return result;
+		return index;
 	}
 
 	/* (non-Javadoc)
@@ -129,18 +169,17 @@ public class Card implements Comparable<Card>, Serializable {
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		if (this == obj)
-			return true;
-		if (obj == null)
-			return false;
-		if (!(obj instanceof Card))
-			return false;
-		Card other = (Card) obj;
-		if (rank != other.rank)
-			return false;
-		if (suit != other.suit)
-			return false;
-		return true;
+		//cards are canonical, so identity is equality
+		return this == obj;
+	}
+
+	/**
+	 * Replace a deserialized card with its canonical instance.
+	 * 
+	 * @return
+	 */
+	private Object readResolve() {
+		return of(suit, rank);
 	}
 	
 	/**
@@ -148,6 +187,7 @@ public class Card implements Comparable<Card>, Serializable {
 	 * @return a deep copy of this Card
 	 */
 	public Card copy () {
-		return new Card (suit, rank);
+		//cards are immutable and canonical, so there is nothing to copy
+		return this;
 	}
 }
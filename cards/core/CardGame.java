@@ -33,6 +33,14 @@ public interface CardGame extends Cloneable {
 	 */
 	public Trick getTrick();
 	
+	/**
+	 * Return the tracker of the cards played so far in the current hand, and
+	 * the voids they have shown. This is updated as each card is played.
+	 * 
+	 * @return
+	 */
+	public CardTracker getTracker();
+	
 	/**
 	 * Check whether the game is finished or not.
 	 * 
@@ -58,19 +66,65 @@ public interface CardGame extends Cloneable {
 	public Set<Player.Direction> getWinnersOfGame();
 	
 	/**
-	 * Return the number of tricks each player has won in the current hand.
+	 * Return the winner(s) of this game as a mask, where bit d.ordinal() is
+	 * set for each winning direction d.
+	 * 
+	 * @return
+	 */
+	public int getWinnerMask();
+	
+	/**
+	 * Return the number of tricks each player has won in the current hand,
+	 * as a read-only view which follows the game as it is played.
 	 * 
 	 * @return
 	 */
 	public Map<Player.Direction,Integer> getTricksWon();
+	
+	/**
+	 * Return the number of tricks the given player has won in the current
+	 * hand.
+	 * 
+	 * @param direction
+	 * @return
+	 */
+	public int getTricksWon(Player.Direction direction);
 
 	/**
-	 * Return the overall score in the game as a whole.
+	 * Return the overall score in the game as a whole, as a read-only view
+	 * which follows the game as it is played.
 	 * 
 	 * @return
 	 */
 	public Map<Player.Direction,Integer> getOverallScores();
 	
+	/**
+	 * Return the overall score of the given player in the game as a whole.
+	 * 
+	 * @param direction
+	 * @return
+	 */
+	public int getOverallScore(Player.Direction direction);
+	
+	/**
+	 * Return a 64-bit Zobrist hash of the current position, covering who
+	 * holds which cards, the cards played to the current trick, its lead
+	 * player and the suit of trumps. This is maintained incrementally, so
+	 * takes constant time.
+	 * 
+	 * @return
+	 */
+	public long positionHash();
+	
+	/**
+	 * Return the cards the given player may legally play next, as a card mask
+	 * (see CardMask). This is empty if it is not the player's turn.
+	 * 
+	 * @param player
+	 * @return
+	 */
+	public long legalMoves(Player.Direction player);
+	
 	/**
 	 * The given player plays the given card.
 	 * 
@@ -79,6 +133,34 @@ public interface CardGame extends Cloneable {
 	 */
 	public void play(Player.Direction player, Card card) throws IllegalMove;
 	
+	/**
+	 * The given player attempts to play the given card, as for play(), but
+	 * returns Trick.Status.OK if the card was played and otherwise the reason
+	 * it was not, instead of throwing an exception.
+	 * 
+	 * @param player
+	 * @param card
+	 * @return
+	 */
+	public Trick.Status tryPlay(Player.Direction player, Card card);
+	
+	/**
+	 * The given player plays the given card, as for play(), but in a way that
+	 * can be undone with unmakeMove(). When the card completes a trick, the
+	 * trick is also scored and the next trick is started, led by its winner.
+	 * This is intended for searching through moves without cloning the game.
+	 * 
+	 * @param player
+	 * @param card
+	 */
+	public void makeMove(Player.Direction player, Card card) throws IllegalMove;
+	
+	/**
+	 * Undo the last move made with makeMove(), including any trick it
+	 * completed. Moves can be undone back to the last call of startRound().
+	 */
+	public void unmakeMove();
+	
 	/**
 	 * Start a new hand by dealing out the given deck.
 	 */
@@ -0,0 +1,90 @@
+package cards.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for working with sets of cards packed into a long, where bit
+ * card.index() is set when the card is in the set (see Hand.mask()).
+ * Cards are visited in their natural order without allocating, using the
+ * following idiom:
+ *
+ * <pre>
+ * for (long m = mask; m != 0; m = CardMask.rest(m)) {
+ * 	Card c = CardMask.first(m);
+ * 	...
+ * }
+ * </pre>
+ *
+ */
+public final class CardMask {
+
+	private CardMask() {
+	}
+
+	/**
+	 * Get the mask containing just the given card.
+	 *
+	 * @param card
+	 * @return
+	 */
+	public static long of(Card card) {
+		return 1L << card.index();
+	}
+
+	/**
+	 * Check whether the given card is in the mask.
+	 *
+	 * @param mask
+	 * @param card
+	 * @return
+	 */
+	public static boolean contains(long mask, Card card) {
+		return (mask & (1L << card.index())) != 0;
+	}
+
+	/**
+	 * Get the number of cards in the mask.
+	 *
+	 * @param mask
+	 * @return
+	 */
+	public static int size(long mask) {
+		return Long.bitCount(mask);
+	}
+
+	/**
+	 * Get the lowest card in the mask, which must not be empty.
+	 *
+	 * @param mask
+	 * @return
+	 */
+	public static Card first(long mask) {
+		return Card.ofIndex(Long.numberOfTrailingZeros(mask));
+	}
+
+	/**
+	 * Get the mask without its lowest card.
+	 *
+	 * @param mask
+	 * @return
+	 */
+	public static long rest(long mask) {
+		return mask & (mask - 1);
+	}
+
+	/**
+	 * Get the cards in the mask as a list, in their natural order. This
+	 * allocates, so is intended for display and debugging.
+	 *
+	 * @param mask
+	 * @return
+	 */
+	public static List<Card> toList(long mask) {
+		List<Card> r = new ArrayList<Card>(Long.bitCount(mask));
+		for (long m = mask; m != 0; m = rest(m)) {
+			r.add(first(m));
+		}
+		return r;
+	}
+}
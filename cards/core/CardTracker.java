@@ -0,0 +1,162 @@
+package cards.core;
+
+import java.io.Serializable;
+
+/**
+ * Keeps track of what every player at the table has seen of the current
+ * hand: which cards have been played, and which players are known to be void
+ * in which suits, having failed to follow when the suit was led. Both are
+ * bitmasks, updated in constant time as each card is played, and can be
+ * taken back again in constant time (see unrecord()).
+ *
+ * A game keeps one tracker (see CardGame.getTracker()), which it clears at
+ * the end of each hand, and computer players are given it to consult.
+ *
+ */
+public final class CardTracker implements Serializable {
+	private static final long serialVersionUID = -3905671460203522381L;
+
+	private long played;	// card mask of cards played this hand
+	private int voids;	// bit seat * 4 + suit set if seat is void in suit
+
+	/**
+	 * Record that the given player played the given card to a trick in which
+	 * the given suit was led.
+	 *
+	 * @param player
+	 * @param card
+	 * @param lead
+	 *            --- suit led, which is the card's own suit if it was led.
+	 * @return true if this showed the player to be void in the suit led for
+	 *         the first time.
+	 */
+	public boolean record(Player.Direction player, Card card, Card.Suit lead) {
+		played |= 1L << card.index();
+		if (card.suit() == lead) {
+			return false;
+		}
+		int bit = 1 << (player.ordinal() * 4 + lead.ordinal());
+		boolean shown = (voids & bit) == 0;
+		voids |= bit;
+		return shown;
+	}
+
+	/**
+	 * Take back a card recorded by record(), given what it returned.
+	 *
+	 * @param player
+	 * @param card
+	 * @param lead
+	 * @param shown
+	 */
+	public void unrecord(Player.Direction player, Card card, Card.Suit lead,
+			boolean shown) {
+		played &= ~(1L << card.index());
+		if (shown) {
+			voids &= ~(1 << (player.ordinal() * 4 + lead.ordinal()));
+		}
+	}
+
+	/**
+	 * Record every card played so far to the given trick.
+	 *
+	 * @param trick
+	 */
+	public void record(Trick trick) {
+		Player.Direction d = trick.getLeadPlayer();
+		for (int i = 0; i != trick.size(); ++i) {
+			record(d, trick.getCard(i), trick.getLeadSuit());
+			d = d.next();
+		}
+	}
+
+	/**
+	 * Forget everything, as at the start of a hand.
+	 */
+	public void clear() {
+		played = 0;
+		voids = 0;
+	}
+
+	/**
+	 * Set everything seen at once, as when restoring a game from a
+	 * GameState.
+	 *
+	 * @param played
+	 *            --- card mask of the cards played so far this hand.
+	 * @param voids
+	 *            --- known voids, as getVoids().
+	 */
+	public void set(long played, int voids) {
+		this.played = played;
+		this.voids = voids;
+	}
+
+	/**
+	 * Make this tracker a copy of another.
+	 *
+	 * @param other
+	 */
+	public void copyFrom(CardTracker other) {
+		played = other.played;
+		voids = other.voids;
+	}
+
+	// ========================================================
+	// Accessors
+	// ========================================================
+
+	/**
+	 * Get the cards played so far this hand, including those in the current
+	 * trick.
+	 *
+	 * @return a card mask (see CardMask)
+	 */
+	public long getPlayed() {
+		return played;
+	}
+
+	/**
+	 * Get the cards of the given suit played so far this hand as a 13-bit
+	 * rank mask (see Hand.suitBits()).
+	 *
+	 * @param suit
+	 * @return
+	 */
+	public int getPlayed(Card.Suit suit) {
+		return (int) (played >>> (suit.ordinal() * 13)) & Hand.SUIT_BITS;
+	}
+
+	/**
+	 * Get the cards the given player has not seen: those neither played nor
+	 * in their own hand. These include any cards not dealt.
+	 *
+	 * @param player
+	 * @return a card mask (see CardMask)
+	 */
+	public long getUnseen(Player player) {
+		return Hand.DECK_BITS & ~played & ~player.getHand().mask();
+	}
+
+	/**
+	 * Check whether the given player is known to hold no cards of the given
+	 * suit.
+	 *
+	 * @param player
+	 * @param suit
+	 * @return
+	 */
+	public boolean isVoid(Player.Direction player, Card.Suit suit) {
+		return (voids & (1 << (player.ordinal() * 4 + suit.ordinal()))) != 0;
+	}
+
+	/**
+	 * Get every known void at once, with bit d.ordinal() * 4 + suit.ordinal()
+	 * set when player d is void in the suit.
+	 *
+	 * @return
+	 */
+	public int getVoids() {
+		return voids;
+	}
+}
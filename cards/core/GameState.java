@@ -0,0 +1,327 @@
+package cards.core;
+
+import java.io.Serializable;
+
+/**
+ * An immutable snapshot of a Whist-like card game. This covers the four
+ * hands, the current trick, the suit of trumps, the tricks won in the current
+ * hand, the cards played and voids shown so far in the hand (see
+ * CardTracker), the overall scores and any counters the variation keeps for
+ * itself (e.g. the hand size in Knock-Out Whist).
+ *
+ * Moves are made with play(), endRound() and startRound(), which mirror
+ * the methods of CardGame but return a new state instead of changing this
+ * one. The new state shares every table which the move did not change, so
+ * branching a game costs a few small arrays rather than a deep clone, and
+ * states can be freely shared between threads.
+ *
+ */
+public final class GameState implements Serializable {
+	private static final long serialVersionUID = 4419582357620379571L;
+	private static final Player.Direction[] SEATS = Player.Direction.values();
+
+	// None of these arrays are ever modified once a state has been built,
+	// which is what allows them to be shared between states.
+	private final long[] hands;	// card mask per direction ordinal
+	private final Player.Direction lead;	// lead of current trick, or null
+	private final Card.Suit trickTrumps;	// trumps of current trick
+	private final Card[] trick;	// cards played in current trick
+	private final int count;	// number of cards in current trick
+	private final Card.Suit trumps;	// trumps of the next trick
+	private final int[] tricksWon;
+	private final long played;	// as CardTracker.getPlayed()
+	private final int voids;	// as CardTracker.getVoids()
+	private final int[] scores;
+	private final int[] counters;
+
+	/**
+	 * Construct a state from its parts. All of the given tables are copied.
+	 *
+	 * @param hands
+	 *            --- card mask (see Hand.mask()) for each direction ordinal.
+	 * @param trick
+	 *            --- current trick, or null if there is none.
+	 * @param trumps
+	 *            --- trumps for the next trick, maybe null if no trumps.
+	 * @param tricksWon
+	 *            --- tricks won in the current hand per direction ordinal.
+	 * @param played
+	 *            --- card mask of the cards played so far in the hand,
+	 *            including the current trick.
+	 * @param voids
+	 *            --- known voids, as CardTracker.getVoids().
+	 * @param scores
+	 *            --- overall scores per direction ordinal.
+	 * @param counters
+	 *            --- any counters kept by the variation.
+	 */
+	public GameState(long[] hands, Trick trick, Card.Suit trumps,
+			int[] tricksWon, long played, int voids, int[] scores,
+			int[] counters) {
+		this.hands = hands.clone();
+		this.trick = new Card[4];
+		if (trick == null) {
+			this.lead = null;
+			this.trickTrumps = null;
+			this.count = 0;
+		} else {
+			this.lead = trick.getLeadPlayer();
+			this.trickTrumps = trick.getTrumps();
+			this.count = trick.size();
+			for (int i = 0; i != count; ++i) {
+				this.trick[i] = trick.getCard(i);
+			}
+		}
+		this.trumps = trumps;
+		this.tricksWon = tricksWon.clone();
+		this.played = played;
+		this.voids = voids;
+		this.scores = scores.clone();
+		this.counters = counters.clone();
+	}
+
+	private GameState(long[] hands, Player.Direction lead,
+			Card.Suit trickTrumps, Card[] trick, int count, Card.Suit trumps,
+			int[] tricksWon, long played, int voids, int[] scores,
+			int[] counters) {
+		this.hands = hands;
+		this.lead = lead;
+		this.trickTrumps = trickTrumps;
+		this.trick = trick;
+		this.count = count;
+		this.trumps = trumps;
+		this.tricksWon = tricksWon;
+		this.played = played;
+		this.voids = voids;
+		this.scores = scores;
+		this.counters = counters;
+	}
+
+	// ========================================================
+	// Accessors
+	// ========================================================
+
+	/**
+	 * Get the hand of the given player as a card mask (see Hand.mask()).
+	 *
+	 * @param d
+	 * @return
+	 */
+	public long getHand(Player.Direction d) {
+		return hands[d.ordinal()];
+	}
+
+	/**
+	 * Get the current trick as a fresh Trick, or null if no trick has been
+	 * started.
+	 *
+	 * @return
+	 */
+	public Trick getTrick() {
+		if (lead == null) {
+			return null;
+		}
+		return new Trick(lead, trickTrumps, trick);
+	}
+
+	/**
+	 * Get the lead player of the current trick, or null if no trick has been
+	 * started.
+	 *
+	 * @return
+	 */
+	public Player.Direction getLeadPlayer() {
+		return lead;
+	}
+
+	/**
+	 * Get the number of cards played in the current trick.
+	 *
+	 * @return
+	 */
+	public int getTrickSize() {
+		return count;
+	}
+
+	/**
+	 * Get the card played at the given position in the current trick, or null
+	 * if no card has been played there yet.
+	 *
+	 * @param position
+	 * @return
+	 */
+	public Card getTrickCard(int position) {
+		return trick[position];
+	}
+
+	/**
+	 * Determine the next player to play in the current trick, or null if
+	 * the trick is complete or has not been started.
+	 *
+	 * @return
+	 */
+	public Player.Direction getNextToPlay() {
+		if (lead == null || count == 4) {
+			return null;
+		}
+		return SEATS[(lead.ordinal() + count) & 3];
+	}
+
+	/**
+	 * Determine the player currently winning the current trick, or null if no
+	 * card has been played.
+	 *
+	 * @return
+	 */
+	public Player.Direction getWinner() {
+		if (count == 0) {
+			return null;
+		}
+		int best = 0;
+		for (int i = 1; i != count; ++i) {
+			Card c = trick[i];
+			Card w = trick[best];
+			if (c.suit() == w.suit() ? c.rank().compareTo(w.rank()) > 0
+					: c.suit() == trickTrumps) {
+				best = i;
+			}
+		}
+		return SEATS[(lead.ordinal() + best) & 3];
+	}
+
+	/**
+	 * Determine which suit will be trumps for the next trick, or null if there
+	 * are no trumps.
+	 *
+	 * @return
+	 */
+	public Card.Suit getTrumps() {
+		return trumps;
+	}
+
+	/**
+	 * Get the number of tricks the given player has won in the current hand.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public int getTricksWon(Player.Direction d) {
+		return tricksWon[d.ordinal()];
+	}
+
+	/**
+	 * Get the cards played so far in the current hand, including those in
+	 * the current trick.
+	 *
+	 * @return a card mask (see CardMask)
+	 */
+	public long getPlayed() {
+		return played;
+	}
+
+	/**
+	 * Get the voids shown so far in the current hand, with bit
+	 * d.ordinal() * 4 + suit.ordinal() set when player d is void in the suit.
+	 *
+	 * @return
+	 */
+	public int getVoids() {
+		return voids;
+	}
+
+	/**
+	 * Get the overall score of the given player.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public int getOverallScore(Player.Direction d) {
+		return scores[d.ordinal()];
+	}
+
+	/**
+	 * Get a copy of the counters kept by the variation.
+	 *
+	 * @return
+	 */
+	public int[] getCounters() {
+		return counters.clone();
+	}
+
+	// ========================================================
+	// Moves
+	// ========================================================
+
+	/**
+	 * The given player plays the given card, following the same rules as
+	 * Trick.play().
+	 *
+	 * @param player
+	 * @param card
+	 * @return the state after the card has been played.
+	 * @throws IllegalMove
+	 */
+	public GameState play(Player.Direction player, Card card) throws IllegalMove {
+		if (player == null || card == null) {
+			throw new IllegalMove("Player and Card must not be null");
+		}
+		long hand = hands[player.ordinal()];
+		long bit = 1L << card.index();
+		if ((hand & bit) == 0) {
+			throw new IllegalMove("Player hand does not contain this card");
+		}
+		if (player != getNextToPlay()) {
+			throw new IllegalMove("Player is not the next to play");
+		}
+		int nVoids = voids;
+		if (count != 0) {
+			Card.Suit leadSuit = trick[0].suit();
+			if (card.suit() != leadSuit) {
+				if ((hand & Hand.suitMask(leadSuit)) != 0) {
+					throw new IllegalMove("Card doesn't follow suit");
+				}
+				nVoids |= 1 << (player.ordinal() * 4 + leadSuit.ordinal());
+			}
+		}
+		long[] nHands = hands.clone();
+		nHands[player.ordinal()] = hand & ~bit;
+		Card[] nTrick = trick.clone();
+		nTrick[count] = card;
+		return new GameState(nHands, lead, trickTrumps, nTrick, count + 1,
+				trumps, tricksWon, played | bit, nVoids, scores, counters);
+	}
+
+	/**
+	 * Signal that the current trick is over, crediting it to its winner.
+	 *
+	 * @return
+	 */
+	public GameState endRound() {
+		if (count != 4) {
+			throw new IllegalStateException("Trick is not complete");
+		}
+		int[] nTricks = tricksWon.clone();
+		nTricks[getWinner().ordinal()]++;
+		return new GameState(hands, lead, trickTrumps, trick, count, trumps,
+				nTricks, played, voids, scores, counters);
+	}
+
+	/**
+	 * Start the next trick, led by the winner of the current one. If there is
+	 * no current trick North leads, and if no card has been played to it yet
+	 * its leader leads again.
+	 *
+	 * @return
+	 * @throws IllegalStateException
+	 *             if the current trick has been started but not completed.
+	 */
+	public GameState startRound() {
+		if (count != 0 && count != 4) {
+			throw new IllegalStateException("Trick is not complete");
+		}
+		Player.Direction d = count == 4 ? getWinner()
+				: lead == null ? Player.Direction.NORTH : lead;
+		return new GameState(hands, d, trumps, new Card[4], 0, trumps,
+				tricksWon, played, voids, scores, counters);
+	}
+}
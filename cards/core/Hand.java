@@ -7,32 +7,91 @@ import java.util.*;
  * Represents a hand of cards held by a player. As the current round proceeds,
  * the number of cards in the hand will decrease. When the round is over, new
  * cards will be delt and added to this hand.
- * 
- * 
+ *
+ * The hand is stored as a single 52-bit mask, where bit
+ * <code>card.index()</code> is set when the card is held. Each suit
+ * therefore occupies a contiguous block of 13 bits, so suit queries are just
+ * shifts and masks. Ascending bit order is the same as the natural ordering of
+ * Card, so iteration order is unchanged.
+ *
+ *
  */
 public class Hand implements Cloneable, Iterable<Card>, Serializable {
 	//make this class Serializable to allow for the deep cloning
 	/**
-	 * 
+	 *
 	 */
 	private static final long serialVersionUID = 635578506478229447L;
-	private SortedSet<Card> cards = new TreeSet<Card>();
-	
+
+	/**
+	 * Mask of the 13 bits used by a single suit.
+	 */
+	public static final int SUIT_BITS = 0x1FFF;
+
+	/**
+	 * Mask of all 52 cards in the deck.
+	 */
+	public static final long DECK_BITS = (1L << 52) - 1;
+
+	private long cards;
+	private long hash;	// Zobrist hash of the cards held by owner
+	private final Player.Direction owner;	// maybe null
+
+	/**
+	 * Construct an empty hand which is not held by any particular player.
+	 */
+	public Hand() {
+		this(null);
+	}
+
+	/**
+	 * Construct an empty hand held by the given player. The owner only
+	 * affects the Zobrist hash of the hand.
+	 *
+	 * @param owner
+	 */
+	public Hand(Player.Direction owner) {
+		this.owner = owner;
+	}
 
 	public Iterator<Card> iterator() {
-		return cards.iterator();
+		return new Iterator<Card>() {
+			private long remaining = cards;
+			private long last;
+
+			public boolean hasNext() {
+				return remaining != 0;
+			}
+
+			public Card next() {
+				if (remaining == 0) {
+					throw new NoSuchElementException();
+				}
+				last = Long.lowestOneBit(remaining);
+				remaining ^= last;
+				return Card.ofIndex(Long.numberOfTrailingZeros(last));
+			}
+
+			public void remove() {
+				if (last == 0) {
+					throw new IllegalStateException();
+				}
+				Hand.this.remove(Card.ofIndex(Long.numberOfTrailingZeros(last)));
+				last = 0;
+			}
+		};
 	}
-	
+
 	/**
 	 * Check with a given card is contained in this hand, or not.
-	 * 
+	 *
 	 * @param card
 	 * @return
 	 */
 	public boolean contains(Card card) {
-		return cards.contains(card);
+		return card != null && (cards & bit(card)) != 0;
 	}
-	
+
 	/**
 	 * Return all cards in this hand which match the given suit.
 	 * @param suit
@@ -40,62 +99,175 @@ public class Hand implements Cloneable, Iterable<Card>, Serializable {
 	 */
 	public Set<Card> matches(Card.Suit suit) {
 		HashSet<Card> r = new HashSet<Card>();
-		for(Card c : cards) {
-			if(c.suit() == suit) {
-				r.add(c);
-			}
+		if (suit == null) {
+			return r;
+		}
+		long bits = cards & suitMask(suit);
+		while (bits != 0) {
+			r.add(Card.ofIndex(Long.numberOfTrailingZeros(bits)));
+			bits &= bits - 1;
 		}
 		return r;
 	}
-	
-	
+
+	/**
+	 * Check whether this hand holds any card of the given suit. This is the
+	 * cheap alternative to <code>!matches(suit).isEmpty()</code>.
+	 *
+	 * @param suit
+	 * @return
+	 */
+	public boolean hasSuit(Card.Suit suit) {
+		return suit != null && (cards & suitMask(suit)) != 0;
+	}
+
+	/**
+	 * Count the cards in this hand of the given suit.
+	 *
+	 * @param suit
+	 * @return
+	 */
+	public int countSuit(Card.Suit suit) {
+		return suit == null ? 0 : Long.bitCount(cards & suitMask(suit));
+	}
+
+	/**
+	 * Get the cards held in the given suit as a 13-bit rank mask, where bit i
+	 * is set when rank i (TWO = 0, ACE = 12) is held.
+	 *
+	 * @param suit
+	 * @return
+	 */
+	public int suitBits(Card.Suit suit) {
+		return (int) (cards >>> (suit.ordinal() * 13)) & SUIT_BITS;
+	}
+
+	/**
+	 * Get the cards in this hand which may be played to a trick where the
+	 * given suit was led: the cards of that suit if there are any, and
+	 * otherwise the whole hand. If lead is null, the whole hand may be played.
+	 *
+	 * @param lead
+	 * @return a card mask (see CardMask)
+	 */
+	public long followMask(Card.Suit lead) {
+		if (lead != null) {
+			long follow = cards & suitMask(lead);
+			if (follow != 0) {
+				return follow;
+			}
+		}
+		return cards;
+	}
+
+	/**
+	 * Get the whole hand as a 52-bit card mask.
+	 *
+	 * @return
+	 */
+	public long mask() {
+		return cards;
+	}
+
+	/**
+	 * Get the Zobrist hash of this hand, which is maintained as cards are
+	 * added and removed (see Zobrist).
+	 *
+	 * @return
+	 */
+	public long hash() {
+		return hash;
+	}
+
 	/**
 	 * Add a card to the hand.
 	 */
-	public void add(Card card) {		
-		cards.add(card);
+	public void add(Card card) {
+		long b = bit(card);
+		if ((cards & b) == 0) {
+			cards |= b;
+			hash ^= Zobrist.hand(owner, card.index());
+		}
 	}
-	
+
 	/**
 	 * Remove a card from the hand.
 	 */
-	public void remove(Card card) {		
-		cards.remove(card);
+	public void remove(Card card) {
+		long b = bit(card);
+		if ((cards & b) != 0) {
+			cards &= ~b;
+			hash ^= Zobrist.hand(owner, card.index());
+		}
 	}
-	
+
 	/**
 	 * Get number of cards in this hand.
-	 * 
+	 *
 	 * @return
 	 */
 	public int size() {
-		return cards.size();
+		return Long.bitCount(cards);
 	}
-	
+
 	/**
 	 * Remove all cards from this hand.
 	 */
 	public void clear() {
-		cards.clear();
-	}	
-	
+		cards = 0;
+		hash = 0;
+	}
+
 	/**
 	 * For debugging
 	 * @return a deep copy of this Card
 	 */
 	public Hand copy() {
-		Hand handCopy = new Hand();
-		for (Card c: cards) {
-			handCopy.add(c);
-		}
+		Hand handCopy = new Hand(owner);
+		handCopy.cards = cards;
+		handCopy.hash = hash;
 		return handCopy;
 	}
-	
+
 	/**
-	 * Helper method in SimpleComputerPlayer
+	 * Replace the contents of this hand with the cards of another hand.
+	 * 
+	 * @param other
+	 */
+	public void copyFrom(Hand other) {
+		cards = other.cards;
+		hash = other.owner == owner ? other.hash : Zobrist.hand(owner, cards);
+	}
+
+	/**
+	 * Helper method in SimpleComputerPlayer. Note that this is a snapshot of
+	 * the hand, rather than a live view.
+	 *
 	 * @return SortedSet of cards
 	 */
 	public SortedSet<Card> cardsInHand () {
-		return cards;
+		TreeSet<Card> r = new TreeSet<Card>();
+		for (Card c : this) {
+			r.add(c);
+		}
+		return r;
+	}
+
+	// ========================================================
+	// Helper methods
+	// ========================================================
+
+	/**
+	 * Get the 52-bit mask covering every card of the given suit.
+	 *
+	 * @param suit
+	 * @return
+	 */
+	public static long suitMask(Card.Suit suit) {
+		return ((long) SUIT_BITS) << (suit.ordinal() * 13);
+	}
+
+	private static long bit(Card card) {
+		return 1L << card.index();
 	}
 }
@@ -16,4 +16,16 @@ public class IllegalMove extends Exception {
 	public IllegalMove(String e) {
 		super(e);
 	}
+
+	/**
+	 * Construct an IllegalMove which, if stackTrace is false, does not record
+	 * a stack trace. This makes it far cheaper to construct, which matters
+	 * when many moves are being rejected (e.g. when validating move logs).
+	 *
+	 * @param e
+	 * @param stackTrace
+	 */
+	public IllegalMove(String e, boolean stackTrace) {
+		super(e, null, false, stackTrace);
+	}
 }
@@ -48,7 +48,7 @@ public class Player implements Serializable {
 	
 	public Player(Direction direction) {
 		this.direction = direction;
-		this.hand = new Hand();
+		this.hand = new Hand(direction);
 	}
 	
 	/**
@@ -1,6 +1,7 @@
 package cards.core;
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,22 +11,59 @@ import cards.core.Player.Direction;
 /**
  * Represents a trick being played. This includes the cards that have been
  * played so far, as well as what the suit of trumps is for this trick.
- * 
- * 
+ *
+ * The number of cards played and the currently winning player and card are
+ * kept up to date on every play, so none of the accessors needs to walk
+ * around the table or allocate.
+ *
  */
 public class Trick implements Serializable {
 	//make this class Serializable to allow for the deep cloning
 	/**
-	 * 
+	 *
 	 */
 	private static final long serialVersionUID = -1724445508093807500L;
+	private static final Player.Direction[] SEATS = Player.Direction.values();
+
+	/**
+	 * The outcome of attempting to play a card with tryPlay().
+	 *
+	 */
+	public enum Status {
+		OK("Card played"),
+		INVALID("Player and Card must not be null"),
+		CARD_NOT_IN_HAND("Player hand does not contain this card"),
+		NOT_YOUR_TURN("Player is not the next to play"),
+		MUST_FOLLOW_SUIT("Card doesn't follow suit");
+
+		private final String message;
+
+		private Status(String message) {
+			this.message = message;
+		}
+
+		/**
+		 * Get a human readable description of this outcome.
+		 *
+		 * @return
+		 */
+		public String getMessage() {
+			return message;
+		}
+	}
+
 	private Card[] cards = new Card[4];
 	private Player.Direction lead;
 	private Card.Suit trumps;
-	
+	private int count;	// number of cards played so far
+	private Player.Direction winner;	// player currently winning, or null
+	private Card winningCard;	// card currently winning, or null
+	private long hash;	// Zobrist hash of lead and cards played
+	private transient List<Card> played;	// read-only view of cards played
+
 	/**
 	 * Construct a new trick with a given lead player and suit of trumps.
-	 * 
+	 *
 	 * @param lead
 	 *            --- lead player for this trick.
 	 * @param trumps
@@ -34,202 +72,380 @@ public class Trick implements Serializable {
 	public Trick(Player.Direction lead, Card.Suit trumps) {
 		this.lead = lead;
 		this.trumps = trumps;
+		this.hash = Zobrist.lead(lead);
 	}
-	
+
 	/**
 	 * Constructor used for deep copy
-	 * 
+	 *
 	 * @param lead - lead player for this trick.
 	 * @param trumps - current trumps
-	 * @param cards - current cards
+	 * @param cards - current cards, which are copied
 	 */
 	public Trick(Direction lead, Suit trumps, Card[] cards) {
 		this.lead = lead;
 		this.trumps = trumps;
-		this.cards = cards;
+		this.hash = Zobrist.lead(lead);
+		for (int i = 0; i != 4 && cards[i] != null; ++i) {
+			record(cards[i]);
+		}
 	}
 
 	/**
 	 * Determine who the lead player for this trick is.
-	 * 
+	 *
 	 * @return
 	 */
 	public Player.Direction getLeadPlayer() {
 		return lead;
 	}
-	
+
 	/**
 	 * Determine which suit are trumps for this trick, or null if there are no
 	 * trumps.
-	 * 
+	 *
 	 * @return
 	 */
 	public Card.Suit getTrumps() {
 		return trumps;
 	}
-	
+
 	/**
-	 * Get the list of cards played so far in the order they were played.
-	 * 
+	 * Get the number of cards played so far, between 0 and 4.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Get the suit which was led, or null if no card has been played yet.
+	 *
+	 * @return
+	 */
+	public Card.Suit getLeadSuit() {
+		return count == 0 ? null : cards[0].suit();
+	}
+
+	/**
+	 * Get the card played at the given position in this trick (0 being the
+	 * lead), or null if no card has been played there yet.
+	 *
+	 * @param position
+	 * @return
+	 */
+	public Card getCard(int position) {
+		return cards[position];
+	}
+
+	/**
+	 * True if a trump has been played in this trick.
+	 *
+	 * @return
+	 */
+	public boolean isTrumpPlayed() {
+		return trumps != null && winningCard != null
+				&& winningCard.suit() == trumps;
+	}
+
+	/**
+	 * Get the card which is currently winning this trick, or null if no card
+	 * has been played yet.
+	 *
+	 * @return
+	 */
+	public Card getWinningCard() {
+		return winningCard;
+	}
+
+	/**
+	 * Get the Zobrist hash of this trick, covering the lead player and the
+	 * cards played at each position (see Zobrist).
+	 *
+	 * @return
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	/**
+	 * Get the list of cards played so far in the order they were played. The
+	 * returned list is a read-only view onto this trick.
+	 *
 	 * @return
 	 */
 	public List<Card> getCardsPlayed() {
-		ArrayList<Card> cs = new ArrayList<Card>();
-		for(int i=0;i!=4;++i) {
-			if(cards[i] != null) {
-				cs.add(cards[i]);
-			} else {
-				break;
-			}
+		if (played == null) {
+			played = new AbstractList<Card>() {
+				public Card get(int i) {
+					if (i < 0 || i >= count) {
+						throw new IndexOutOfBoundsException("Index: " + i);
+					}
+					return cards[i];
+				}
+
+				public int size() {
+					return count;
+				}
+			};
 		}
-		return cs;
+		return played;
 	}
-	
+
 	/**
 	 * Get the card played by a given player, or null if that player has yet to
 	 * play.
-	 * 
+	 *
 	 * @param p --- player
 	 * @return
 	 */
-	public Card getCardPlayed(Player.Direction p) {		
-		Player.Direction player = lead;
-		for(int i=0;i!=4;++i) {
-			if(player.equals(p)) {
-				return cards[i];
-			}
-			player = player.next();
-		}
-		// deadcode
-		return null;
+	public Card getCardPlayed(Player.Direction p) {
+		return cards[(p.ordinal() - lead.ordinal()) & 3];
 	}
-	
+
 	/**
 	 * Determine the next player to play in this trick.
-	 * 
+	 *
 	 * @return
 	 */
 	public Player.Direction getNextToPlay() {
-		Player.Direction dir = lead;
-		for(int i=0;i!=4;++i) {
-			if(cards[i] == null) {
-				return dir;
-			}
-			dir = dir.next();			
+		if (count == 4) {
+			return null;
 		}
-		return null;
+		return SEATS[(lead.ordinal() + count) & 3];
 	}
-	
+
 	/**
 	 * Determine the winning player for this trick. This requires looking to see
 	 * which player led the highest card that followed suit; or, was a trump.
-	 * 
+	 * Before the trick is complete, this is the player currently winning.
+	 *
 	 * @return
 	 */
 	public Player.Direction getWinner() {
-		Player.Direction player = lead;
-		Player.Direction winningPlayer = null;
-		Card winningCard = cards[0];
-		for (int i = 0; i != 4; ++i) {
-			if (cards[i].suit() == winningCard.suit()
-					&& cards[i].compareTo(winningCard) >= 0) {
-				winningPlayer = player;
-				winningCard = cards[i];
-			} else if (trumps != null && cards[i].suit() == trumps
-					&& winningCard.suit() != trumps) {
-				// in this case, the winning card is a trump
-				winningPlayer = player;
-				winningCard = cards[i];
-			}
-			player = player.next();
-		}
-		return winningPlayer;
+		return winner;
 	}
-	
+
 	/**
 	 * Player attempts to play a card. This method checks that the given player
 	 * is entitled to play, and that the played card follows suit. If either of
 	 * these are not true, it throws an IllegalMove exception.
 	 */
 	public void play(Player p, Card c) throws IllegalMove {
+		Status status = tryPlay(p, c);
+		if (status != Status.OK) {
+			throw new IllegalMove(status.getMessage());
+		}
+	}
+
+	/**
+	 * Player attempts to play a card, as for play(). Rather than throwing an
+	 * exception, this returns Status.OK if the card was played and otherwise
+	 * the reason it was not, in which case nothing is changed.
+	 *
+	 * @param p --- player
+	 * @param c --- card to play
+	 * @return
+	 */
+	public Status tryPlay(Player p, Card c) {
 		//check null so we can call method on them
 		if (p == null || c == null) {
-			throw new IllegalMove("Player and Card must not be null");
+			return Status.INVALID;
 		}
 		//player must have card
 		if (!p.getHand().contains(c)) {
-			throw new IllegalMove("Player hand does not contain this card");
+			return Status.CARD_NOT_IN_HAND;
 		}
 		//it must be player's turn
 		if (p.getDirection() != getNextToPlay()) {
-			throw new IllegalMove("Player is not the next to play");
+			return Status.NOT_YOUR_TURN;
 		}
-		
+
 		//check if  player's hand has a card with same suit as leader
 		Card leadCard = cards[0];	//leader's card
 		if (leadCard != null) {	//if card exists
 			//inspect player hand, if any matches
 			//if it gets past above condition, match leadCard's suit to player hand's card, there should be one
 			//if c not same as lead suit, then illegal move
-			if (!p.getHand().matches(leadCard.suit()).isEmpty()) {
+			if (p.getHand().hasSuit(leadCard.suit())) {
 				if (!c.suit().equals(leadCard.suit())) {
-					throw new IllegalMove("Card doesn't follow suit");
+					return Status.MUST_FOLLOW_SUIT;
 				}
 			}
 		}
-		
+
 		// Finally, play the card.
+		record(c);
+		p.getHand().remove(c);
+		return Status.OK;
+	}
+
+	/**
+	 * Get the cards the given player may legally play next in this trick.
+	 * This is empty if it is not the player's turn, and otherwise respects
+	 * following suit exactly as play() does.
+	 *
+	 * @param p --- player
+	 * @return a card mask (see CardMask)
+	 */
+	public long legalMoves(Player p) {
+		if (p.getDirection() != getNextToPlay()) {
+			return 0;
+		}
+		return p.getHand().followMask(getLeadSuit());
+	}
+
+	/**
+	 * Take back the last card played in this trick, returning it to the hand
+	 * of the given player (who must be the one that played it). This is the
+	 * reverse of play().
+	 *
+	 * @param p --- player who played the last card
+	 * @return the card taken back
+	 */
+	public Card retract(Player p) {
+		if (count == 0) {
+			throw new IllegalStateException("No card to take back");
+		}
+		if (p.getDirection() != SEATS[(lead.ordinal() + count - 1) & 3]) {
+			throw new IllegalStateException("Player did not play the last card");
+		}
+		Card c = cards[--count];
+		cards[count] = null;
+		hash ^= Zobrist.trick(count, c.index());
+		p.getHand().add(c);
+		// replay the remaining cards to find who is now winning
+		int n = count;
+		count = 0;
+		winner = null;
+		winningCard = null;
+		long h = hash;
+		for (int i = 0; i != n; ++i) {
+			record(cards[i]);
+		}
+		hash = h;
+		return c;
+	}
+
+	/**
+	 * Empty this trick and give it a new lead player and suit of trumps, so
+	 * that it can be reused rather than allocating a new one.
+	 *
+	 * @param lead
+	 * @param trumps
+	 */
+	public void reset(Player.Direction lead, Card.Suit trumps) {
+		this.lead = lead;
+		this.trumps = trumps;
 		for (int i = 0; i != 4; ++i) {
-			if (cards[i] == null) {
-				cards[i] = c;
-				p.getHand().remove(c);
-				break;
+			cards[i] = null;
+		}
+		count = 0;
+		winner = null;
+		winningCard = null;
+		hash = Zobrist.lead(lead);
+	}
+
+	/**
+	 * Append a card to this trick, and update the winning player and card.
+	 *
+	 * @param c
+	 */
+	private void record(Card c) {
+		Player.Direction player = SEATS[(lead.ordinal() + count) & 3];
+		if (winningCard == null) {
+			winner = player;
+			winningCard = c;
+		} else if (c.suit() == winningCard.suit()) {
+			if (c.rank().compareTo(winningCard.rank()) > 0) {
+				winner = player;
+				winningCard = c;
 			}
+		} else if (trumps != null && c.suit() == trumps) {
+			// in this case, the winning card is a trump
+			winner = player;
+			winningCard = c;
 		}
+		hash ^= Zobrist.trick(count, c.index());
+		cards[count++] = c;
 	}
-	
+
 	/**
 	 * True if this trick contains a card with a trump suit
 	 * @param trump -  - the suit of the card to match
 	 * @return
 	 */
 	public boolean containsSuit(Suit trump) {
-		for (int i=0; i < cards.length; i++) {		//inspect all cards
-			if (cards[i] == null) {	//skip null
-				continue;
-			} else {
-				if (cards[i].suit().equals(trump)) {	//suit match, return true
-					return true;
-				}
+		for (int i=0; i < count; i++) {		//inspect all cards
+			if (cards[i].suit() == trump) {	//suit match, return true
+				return true;
 			}
 		}
 		return false;
 	}
-	
+
+	/**
+	 * Highest ranked card played in this trick which matches the given suit,
+	 * or null if there is none.
+	 * @param suit - the suit of the card to match
+	 * @return
+	 */
+	public Card highestPlayed(Suit suit) {
+		Card highest = null;
+		for (int i=0; i < count; i++) {
+			Card c = cards[i];
+			if (c.suit() == suit && (highest == null || c.rank().compareTo(highest.rank()) > 0)) {
+				highest = c;
+			}
+		}
+		return highest;
+	}
+
+	/**
+	 * Cards played in this trick which match the given suit, without
+	 * allocating.
+	 * @param suit - the suit of the card to match
+	 * @return a card mask (see CardMask)
+	 */
+	public long playedMask(Suit suit) {
+		long mask = 0;
+		for (int i=0; i < count; i++) {
+			if (cards[i].suit() == suit) {
+				mask |= CardMask.of(cards[i]);
+			}
+		}
+		return mask;
+	}
+
 	/**
-	 * List of cards in this trick which matches trump suit
+	 * List of cards in this trick which matches trump suit, in the order they
+	 * were played. This allocates a new list; use playedMask() where the
+	 * order does not matter.
 	 * @param trump - the suit of the card to match
 	 * @return
 	 */
 	public List<Card> matchCardsPlayed(Suit trump) {
 		List<Card> matches = new ArrayList<Card>();
-		for (int i=0; i < cards.length; i++) {	//inspect all cards
-			if (cards[i] == null) {	//skip null
-				continue;
-			} else {
-				if (cards[i].suit().equals(trump)) {	//suit match
-					matches.add(cards[i]);	//add to list
-				}
+		for (int i=0; i < count; i++) {	//inspect all cards
+			if (cards[i].suit().equals(trump)) {	//suit match
+				matches.add(cards[i]);	//add to list
 			}
 		}
 		return matches;
 	}
-	
+
 	/**
 	 * @return a deep copy of this Card
 	 */
 	public Trick copy () {
-		return new Trick(lead, trumps, cards);
+		Trick t = new Trick(lead, trumps);
+		System.arraycopy(cards, 0, t.cards, 0, 4);
+		t.count = count;
+		t.winner = winner;
+		t.winningCard = winningCard;
+		t.hash = hash;
+		return t;
 	}
-	
+
 }
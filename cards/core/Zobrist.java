@@ -0,0 +1,116 @@
+package cards.core;
+
+/**
+ * Random keys for Zobrist hashing of game positions. A position is hashed by
+ * exclusive-or'ing together the key of every card in every hand (which
+ * depends on who holds it), every card in the current trick (which depends on
+ * its position in the trick), the lead player of the trick and the suit of
+ * trumps. Since exclusive-or is its own inverse, the hash can be updated in
+ * constant time as cards move.
+ *
+ * The keys are generated from a fixed seed, so hashes are the same on every
+ * run.
+ *
+ */
+public final class Zobrist {
+	private static final long[] HAND = new long[5 * 52];
+	private static final long[] TRICK = new long[4 * 52];
+	private static final long[] LEAD = new long[4];
+	private static final long[] TRUMPS = new long[5];
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	static {
+		long seed = 0x5DEECE66DL;
+		for (int i = 0; i != HAND.length; ++i) {
+			HAND[i] = mix(seed += GAMMA);
+		}
+		for (int i = 0; i != TRICK.length; ++i) {
+			TRICK[i] = mix(seed += GAMMA);
+		}
+		for (int i = 0; i != LEAD.length; ++i) {
+			LEAD[i] = mix(seed += GAMMA);
+		}
+		for (int i = 0; i != TRUMPS.length; ++i) {
+			TRUMPS[i] = mix(seed += GAMMA);
+		}
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * Key for the given card being held by the given player, or by no player
+	 * if owner is null.
+	 *
+	 * @param owner
+	 * @param card
+	 *            --- card index (see Card.index()).
+	 * @return
+	 */
+	public static long hand(Player.Direction owner, int card) {
+		int row = owner == null ? 4 : owner.ordinal();
+		return HAND[row * 52 + card];
+	}
+
+	/**
+	 * Key for the given card being played at the given position (0 being the
+	 * lead) of the current trick.
+	 *
+	 * @param position
+	 * @param card
+	 *            --- card index (see Card.index()).
+	 * @return
+	 */
+	public static long trick(int position, int card) {
+		return TRICK[position * 52 + card];
+	}
+
+	/**
+	 * Key for the given player leading the current trick.
+	 *
+	 * @param lead
+	 * @return
+	 */
+	public static long lead(Player.Direction lead) {
+		return LEAD[lead.ordinal()];
+	}
+
+	/**
+	 * Key for the given suit being trumps, or for no trumps if suit is null.
+	 *
+	 * @param suit
+	 * @return
+	 */
+	public static long trumps(Card.Suit suit) {
+		return TRUMPS[suit == null ? 4 : suit.ordinal()];
+	}
+
+	/**
+	 * Hash a whole card mask held by the given player. This is linear in the
+	 * number of cards, and is used where a hand is replaced wholesale.
+	 *
+	 * @param owner
+	 * @param cards
+	 * @return
+	 */
+	public static long hand(Player.Direction owner, long cards) {
+		long h = 0;
+		while (cards != 0) {
+			h ^= hand(owner, Long.numberOfTrailingZeros(cards));
+			cards &= cards - 1;
+		}
+		return h;
+	}
+
+	/**
+	 * The output function of the SplitMix64 generator.
+	 *
+	 * @param z
+	 * @return
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
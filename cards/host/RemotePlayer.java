@@ -0,0 +1,185 @@
+package cards.host;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import cards.core.*;
+import cards.util.AbstractComputerPlayer;
+import cards.util.SimpleComputerPlayer;
+
+/**
+ * A seat whose moves come from outside the table, typically a human
+ * connected over the network. Moves are handed over with submit(), tagged
+ * with the number of the seat's turn they are meant for (see getTurn()), so
+ * a move which arrives after its turn has passed is refused rather than
+ * played on the next one. A move may arrive before the table gets round to
+ * the seat: it is held in a single slot until then, and checked against the
+ * legal cards when the turn starts. The slot is emptied whenever a turn
+ * ends.
+ *
+ * The table does not wait for the seat while no move is held, so a seat
+ * waiting for a move holds no thread (see Table). If no legal move has
+ * arrived when the move timeout expires, a SimpleComputerPlayer plays on the
+ * seat's behalf.
+ *
+ * A remote seat can only be played at a Table, and only at one at a time.
+ *
+ */
+public class RemotePlayer extends AbstractComputerPlayer {
+	private final AbstractComputerPlayer fallback;
+	private final long timeout;
+	// the rest is guarded by this
+	private Table table;
+	private int turn;	// number of turns the seat has played
+	private long legal;	// cards which may be played this turn, or 0
+	private long deadline;	// System.nanoTime() at which this turn times out
+	private ScheduledFuture<?> timer;	// wakes the table at the deadline
+	private Card move;	// card submitted for this turn, or null
+	private int timeouts;
+
+	/**
+	 * Construct a remote seat for the given player.
+	 *
+	 * @param player
+	 * @param timeout
+	 *            --- how long to wait for each move, in milliseconds.
+	 */
+	public RemotePlayer(Player player, long timeout) {
+		super(player);
+		this.fallback = new SimpleComputerPlayer(player);
+		this.timeout = timeout;
+	}
+
+	public void setPlayer(Player player) {
+		super.setPlayer(player);
+		fallback.setPlayer(player);
+	}
+
+	public void setTracker(CardTracker tracker) {
+		super.setTracker(tracker);
+		fallback.setTracker(tracker);
+	}
+
+	/**
+	 * Hand over the card to be played on the given turn. This only succeeds
+	 * if the turn is the seat's current or next turn (see getTurn()), no card
+	 * has been submitted for it yet, and, if the table is already waiting for
+	 * the seat, the card is a legal move.
+	 *
+	 * @param turn
+	 * @param card
+	 * @return true if the card was accepted.
+	 */
+	public synchronized boolean submit(int turn, Card card) {
+		if (card == null || turn != this.turn || move != null) {
+			return false;
+		}
+		if (legal != 0 && !CardMask.contains(legal, card)) {
+			return false;
+		}
+		move = card;
+		if (legal != 0) {
+			table.wake();
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of the turn which submit() currently accepts: the turn
+	 * the table is waiting for, or else the seat's next turn. Turns are
+	 * numbered from 0 for the seat's first card at the table.
+	 *
+	 * @return
+	 */
+	public synchronized int getTurn() {
+		return turn;
+	}
+
+	/**
+	 * Check whether the table is waiting for this seat to move.
+	 *
+	 * @return
+	 */
+	public synchronized boolean isWaiting() {
+		return legal != 0;
+	}
+
+	/**
+	 * Get the number of moves which were played by the fallback player
+	 * because the seat did not move in time.
+	 *
+	 * @return
+	 */
+	public synchronized int getTimeouts() {
+		return timeouts;
+	}
+
+	/**
+	 * Not supported: a remote seat's moves arrive through submit(), and
+	 * tables take them without waiting (see take()).
+	 */
+	public Card getNextCard(Trick trick) {
+		throw new UnsupportedOperationException("Remote seats only play at a Table");
+	}
+
+	// ========================================================
+	// Used by the table
+	// ========================================================
+
+	synchronized void attach(Table table) {
+		if (this.table != null) {
+			throw new IllegalStateException("Remote seat is already at a table");
+		}
+		this.table = table;
+	}
+
+	/**
+	 * Stop waiting for a move, as the table has finished.
+	 */
+	synchronized void detach() {
+		endTurn();
+	}
+
+	/**
+	 * Take the card to be played on the seat's current turn, starting the
+	 * turn if it has not started yet. This never waits.
+	 *
+	 * @param trick
+	 * @return the card submitted for the turn, the fallback player's card if
+	 *         the turn has timed out, or null if the table should wait.
+	 */
+	synchronized Card take(Trick trick) {
+		if (legal == 0) {
+			legal = trick.legalMoves(player);
+			deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+			if (move != null && !CardMask.contains(legal, move)) {
+				// submitted early, and not legal now the turn has come
+				move = null;
+			}
+		}
+		Card card = move;
+		if (card == null) {
+			long wait = deadline - System.nanoTime();
+			if (wait > 0) {
+				if (timer == null || timer.isDone()) {
+					timer = table.wakeAfter(wait);
+				}
+				return null;
+			}
+			timeouts++;
+			card = fallback.getNextCard(trick);
+		}
+		endTurn();
+		turn++;
+		return card;
+	}
+
+	private void endTurn() {
+		if (timer != null) {
+			timer.cancel(false);
+			timer = null;
+		}
+		move = null;
+		legal = 0;
+	}
+}
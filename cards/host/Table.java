@@ -0,0 +1,229 @@
+package cards.host;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cards.core.*;
+import cards.util.AbstractCardGame;
+import cards.util.AbstractComputerPlayer;
+import cards.util.GameEngine;
+
+/**
+ * A single live table hosted by a TableHost: a game and the players seated
+ * at it. The table plays one game from start to finish in steps of one card
+ * (or one finished round) each, run on the host's threads. It never waits
+ * for a RemotePlayer: when one has not moved yet, the table simply stops, and
+ * is woken again by the move or the seat's timeout. Steps of one table never
+ * overlap, so the game itself needs no locking.
+ *
+ * Other threads follow its progress through getState(), which returns an
+ * immutable snapshot published after every move.
+ *
+ */
+public class Table {
+	private final TableHost host;
+	private final long id;
+	private final AbstractCardGame game;
+	private final GameEngine engine;
+	private final AbstractComputerPlayer[] seats;
+	// wake-ups not yet handled: the table has a step queued or running
+	// whenever this is non-zero
+	private final AtomicInteger wakeups = new AtomicInteger();
+	private final Runnable stepper = new Runnable() {
+		public void run() {
+			step();
+		}
+	};
+	private volatile GameState state;
+	private volatile boolean finished;
+	private volatile boolean cancelled;
+	private volatile Throwable failure;
+	private boolean started;	// only used by steps
+
+	Table(TableHost host, long id, AbstractCardGame game, AbstractComputerPlayer[] seats) {
+		this.host = host;
+		this.id = id;
+		this.game = game;
+		this.engine = new GameEngine(game);
+		this.seats = seats.clone();
+		for (Player.Direction d : Player.Direction.values()) {
+			AbstractComputerPlayer seat = seats[d.ordinal()];
+			if (seat instanceof RemotePlayer) {
+				((RemotePlayer) seat).attach(this);
+			}
+			engine.setComputerPlayer(d, seat);
+		}
+		this.state = game.toState();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Get the player seated at the given direction.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public AbstractComputerPlayer getSeat(Player.Direction d) {
+		return seats[d.ordinal()];
+	}
+
+	/**
+	 * Get a snapshot of the game as of the last move.
+	 *
+	 * @return
+	 */
+	public GameState getState() {
+		return state;
+	}
+
+	/**
+	 * Check whether the game has finished, been cancelled or failed.
+	 *
+	 * @return
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Get the exception which stopped this table, or null if there was none.
+	 *
+	 * @return
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Stop the game. A table waiting for a remote seat stops at once; one
+	 * whose computer player is choosing a card stops once the card is chosen.
+	 */
+	public void cancel() {
+		cancelled = true;
+		wake();
+	}
+
+	// ========================================================
+	// Steps
+	// ========================================================
+
+	/**
+	 * Queue a step of this table, unless one is already queued or running,
+	 * in which case that step will see whatever woke the table.
+	 */
+	void wake() {
+		if (wakeups.getAndIncrement() == 0) {
+			queue();
+		}
+	}
+
+	/**
+	 * Wake this table after the given delay.
+	 *
+	 * @return the pending wake-up, or null if the host has shut down.
+	 */
+	ScheduledFuture<?> wakeAfter(long nanos) {
+		try {
+			return host.schedule(new Runnable() {
+				public void run() {
+					wake();
+				}
+			}, nanos);
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+
+	private void queue() {
+		try {
+			host.execute(stepper);
+		} catch (RejectedExecutionException e) {
+			// the host has shut down, so close the table on this thread
+			cancelled = true;
+			stepper.run();
+		}
+	}
+
+	private void step() {
+		int n = wakeups.get();
+		if (advance()) {
+			// go round again, but let other tables have a turn first
+			wakeups.incrementAndGet();
+		}
+		if (wakeups.addAndGet(-n) != 0) {
+			queue();
+		}
+	}
+
+	/**
+	 * Play the next card or finish the round.
+	 *
+	 * @return true if the table can go on straight away, or false if it is
+	 *         finished or waiting for a remote seat.
+	 */
+	private boolean advance() {
+		if (finished) {
+			return false;
+		}
+		if (cancelled) {
+			close();
+			return false;
+		}
+		try {
+			if (!started) {
+				started = true;
+				engine.startHand();
+				state = game.toState();
+				return true;
+			}
+			Trick trick = game.getTrick();
+			Player.Direction next = trick.getNextToPlay();
+			if (next == null) {
+				GameEngine.Outcome outcome = engine.finishRound();
+				if (outcome == GameEngine.Outcome.GAME_OVER) {
+					state = game.toState();
+					close();
+					return false;
+				} else if (outcome == GameEngine.Outcome.NEXT_HAND) {
+					engine.startHand();
+				} else {
+					engine.startRound();
+				}
+			} else if (seats[next.ordinal()] instanceof RemotePlayer) {
+				Card card = ((RemotePlayer) seats[next.ordinal()]).take(trick);
+				if (card == null) {
+					return false;
+				}
+				if (game.tryPlay(next, card) != Trick.Status.OK) {
+					throw new IllegalStateException("Remote seat played an illegal card");
+				}
+			} else {
+				engine.playComputer();
+			}
+			state = game.toState();
+			return true;
+		} catch (RuntimeException e) {
+			failure = e;
+			close();
+			return false;
+		}
+	}
+
+	/**
+	 * Finish the table and give its slot back to the host. Only the last step
+	 * of a table calls this, so it happens exactly once.
+	 */
+	private void close() {
+		finished = true;
+		for (AbstractComputerPlayer seat : seats) {
+			if (seat instanceof RemotePlayer) {
+				((RemotePlayer) seat).detach();
+			}
+		}
+		host.closed(this);
+	}
+}
@@ -0,0 +1,179 @@
+package cards.host;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cards.util.AbstractCardGame;
+import cards.util.AbstractComputerPlayer;
+
+/**
+ * Hosts many live tables in one JVM on a fixed pool of threads. A table only
+ * holds a thread while it is making progress: a computer player choosing a
+ * card, or a round being finished. A table waiting for a RemotePlayer to
+ * move holds no thread at all, and is picked up again by the pool when the
+ * move is submitted or the seat's move timeout expires. Idle tables therefore
+ * cost only their memory, so tens of thousands can be open at once, and
+ * moves and timeouts are handed over without a thread per table or per
+ * timer.
+ *
+ * Tables take turns on the pool a card at a time, so a game between computer
+ * players holds a thread for no longer than it takes to choose one card.
+ *
+ */
+public class TableHost {
+	private final ScheduledThreadPoolExecutor executor;
+	private final int maxTables;
+	private final AtomicInteger open = new AtomicInteger();
+	private final AtomicLong nextId = new AtomicLong();
+	private final ConcurrentHashMap<Long, Table> tables = new ConcurrentHashMap<Long, Table>();
+
+	/**
+	 * Construct a host which allows at most maxTables tables to be open at
+	 * once, with a thread for each available processor.
+	 *
+	 * @param maxTables
+	 */
+	public TableHost(int maxTables) {
+		this(maxTables, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Construct a host which allows at most maxTables tables to be open at
+	 * once, played on the given number of threads.
+	 *
+	 * @param maxTables
+	 * @param threads
+	 */
+	public TableHost(int maxTables, int threads) {
+		if (maxTables < 1 || threads < 1) {
+			throw new IllegalArgumentException("Need at least one table and one thread");
+		}
+		this.maxTables = maxTables;
+		this.executor = new ScheduledThreadPoolExecutor(threads);
+		// timeouts of moves which were made in time are dropped at once, and
+		// none are run once the host has shut down
+		executor.setRemoveOnCancelPolicy(true);
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Open a table for the given game and start playing it. Each seat must
+	 * have a player, which can be a RemotePlayer for seats whose moves come
+	 * from outside.
+	 *
+	 * @param game
+	 * @param seats
+	 *            --- player for each direction, indexed by ordinal.
+	 * @return
+	 */
+	public Table open(AbstractCardGame game, AbstractComputerPlayer[] seats) {
+		if (seats.length != 4) {
+			throw new IllegalArgumentException("Need a player for each of the four seats");
+		}
+		if (executor.isShutdown()) {
+			throw new IllegalStateException("Host has shut down");
+		}
+		if (open.incrementAndGet() > maxTables) {
+			open.decrementAndGet();
+			throw new IllegalStateException("Too many open tables");
+		}
+		Table table;
+		try {
+			table = new Table(this, nextId.getAndIncrement(), game, seats);
+		} catch (RuntimeException e) {
+			open.decrementAndGet();
+			throw e;
+		}
+		tables.put(table.getId(), table);
+		table.wake();
+		return table;
+	}
+
+	/**
+	 * Get the table with the given id, or null if it has finished.
+	 *
+	 * @param id
+	 * @return
+	 */
+	public Table getTable(long id) {
+		return tables.get(id);
+	}
+
+	/**
+	 * Get all tables which are currently open.
+	 *
+	 * @return
+	 */
+	public Collection<Table> getTables() {
+		return Collections.unmodifiableCollection(tables.values());
+	}
+
+	/**
+	 * Get the number of tables which are currently open.
+	 *
+	 * @return
+	 */
+	public int getOpenTables() {
+		return open.get();
+	}
+
+	/**
+	 * Cancel every open table and stop accepting new ones.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		for (Table table : tables.values()) {
+			table.cancel();
+		}
+	}
+
+	/**
+	 * Wait for all tables to finish after shutdown().
+	 *
+	 * @param millis
+	 * @return true if all tables finished in time.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long millis) throws InterruptedException {
+		return executor.awaitTermination(millis, TimeUnit.MILLISECONDS);
+	}
+
+	// ========================================================
+	// Used by tables
+	// ========================================================
+
+	/**
+	 * Run a step of a table on the pool.
+	 *
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             if the host has shut down.
+	 */
+	void execute(Runnable step) {
+		executor.execute(step);
+	}
+
+	/**
+	 * Run a step of a table on the pool after the given delay.
+	 *
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *             if the host has shut down.
+	 */
+	ScheduledFuture<?> schedule(Runnable step, long nanos) {
+		return executor.schedule(step, nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Release the slot of a table which has finished. Each table calls this
+	 * exactly once, from its last step.
+	 */
+	void closed(Table table) {
+		tables.remove(table.getId());
+		open.decrementAndGet();
+	}
+}
@@ -0,0 +1,94 @@
+package cards.simulation;
+
+import cards.core.Player;
+
+/**
+ * The outcome of one simulated game: the seed it was dealt from, who won,
+ * the final scores and the total number of tricks each player took.
+ *
+ */
+public final class GameResult {
+	private final long seed;
+	private final int winners;
+	private final int[] scores;
+	private final int[] tricks;
+	private final int hands;
+
+	public GameResult(long seed, int winners, int[] scores, int[] tricks, int hands) {
+		this.seed = seed;
+		this.winners = winners;
+		this.scores = scores.clone();
+		this.tricks = tricks.clone();
+		this.hands = hands;
+	}
+
+	/**
+	 * Get the seed from which this game was shuffled.
+	 *
+	 * @return
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Get the winners of this game (see CardGame.getWinnerMask()).
+	 *
+	 * @return
+	 */
+	public int getWinnerMask() {
+		return winners;
+	}
+
+	/**
+	 * Check whether the given player was one of the winners of this game.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public boolean isWinner(Player.Direction d) {
+		return (winners & (1 << d.ordinal())) != 0;
+	}
+
+	/**
+	 * Get the final overall score of the given player.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public int getScore(Player.Direction d) {
+		return scores[d.ordinal()];
+	}
+
+	/**
+	 * Get the total number of tricks the given player took over the game.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public int getTricks(Player.Direction d) {
+		return tricks[d.ordinal()];
+	}
+
+	/**
+	 * Get the number of hands played in this game.
+	 *
+	 * @return
+	 */
+	public int getHands() {
+		return hands;
+	}
+
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append("Game ").append(seed).append(':');
+		for (Player.Direction d : Player.Direction.values()) {
+			b.append(' ').append(d).append('=').append(scores[d.ordinal()])
+					.append('/').append(tricks[d.ordinal()]);
+			if (isWinner(d)) {
+				b.append('*');
+			}
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,262 @@
+package cards.simulation;
+
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import cards.core.Player;
+import cards.util.AbstractCardGame;
+import cards.util.AbstractComputerPlayer;
+import cards.util.GameEngine;
+
+/**
+ * Plays large numbers of games between computer players, spread over a
+ * fork-join pool. Game i of a run is shuffled from a Random seeded with i,
+ * so a given seed range always produces the same games regardless of the
+ * parallelism or how the work is split.
+ *
+ * Each worker thread creates its game and players once, and resets the game
+ * between games. Since players are reused, they must not carry state from
+ * one game into the next if results are to be reproducible.
+ *
+ */
+public class SimulationRunner {
+
+	/**
+	 * Creates the game variation to be played.
+	 */
+	public interface GameFactory {
+		public AbstractCardGame create();
+	}
+
+	/**
+	 * Creates the computer player for one seat of a game.
+	 */
+	public interface PlayerFactory {
+		public AbstractComputerPlayer create(Player player);
+	}
+
+	/**
+	 * Number of games a task plays itself rather than splitting further.
+	 */
+	private static final int THRESHOLD = 64;
+
+	/**
+	 * Number of games per pool thread that results() plays at a time.
+	 */
+	private static final int BATCH = 4 * THRESHOLD;
+
+	private final GameFactory games;
+	private final PlayerFactory[] seats;
+	private final ForkJoinPool pool;
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+
+	/**
+	 * Construct a runner which uses every available processor.
+	 *
+	 * @param games
+	 * @param seats
+	 *            --- player factory for each direction, indexed by ordinal.
+	 */
+	public SimulationRunner(GameFactory games, PlayerFactory[] seats) {
+		this(games, seats, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Construct a runner with the given level of parallelism.
+	 *
+	 * @param games
+	 * @param seats
+	 *            --- player factory for each direction, indexed by ordinal.
+	 * @param parallelism
+	 */
+	public SimulationRunner(GameFactory games, PlayerFactory[] seats, int parallelism) {
+		if (seats.length != 4) {
+			throw new IllegalArgumentException("Need a player factory for each of the four seats");
+		}
+		this.games = games;
+		this.seats = seats.clone();
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Play the games with seeds from (inclusive) to (exclusive), and return
+	 * their results in seed order. Games are played lazily, a batch at a
+	 * time across the pool as the stream is consumed, so only one batch of
+	 * results is held at once however long the range.
+	 *
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public Stream<GameResult> results(long from, long to) {
+		if (to < from) {
+			throw new IllegalArgumentException("Invalid seed range " + from + ".." + to);
+		}
+		return StreamSupport.stream(new Batches(from, to), false);
+	}
+
+	/**
+	 * Play the games with seeds from (inclusive) to (exclusive), and return
+	 * their totals. This needs no more memory however many games are
+	 * played, and splits the whole range across the pool at once.
+	 *
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public SimulationSummary summarize(long from, long to) {
+		return pool.invoke(new Summarize(from, to));
+	}
+
+	/**
+	 * Shut down the worker threads. The runner cannot be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * The game, players and random number generator owned by one worker
+	 * thread.
+	 */
+	private final class Worker {
+		private final AbstractCardGame game = games.create();
+		private final Random random = new Random();
+		private final GameEngine engine = new GameEngine(game, random);
+		private final int[] scores = new int[4];
+		private final int[] tricks = new int[4];
+
+		Worker() {
+			for (Player.Direction d : Player.Direction.values()) {
+				engine.setComputerPlayer(d, seats[d.ordinal()].create(game.getPlayer(d)));
+			}
+		}
+
+		GameResult play(long seed) {
+			game.reset();
+			random.setSeed(seed);
+			int winners = engine.playGame();
+			for (Player.Direction d : Player.Direction.values()) {
+				scores[d.ordinal()] = game.getOverallScore(d);
+				tricks[d.ordinal()] = engine.getTricksTaken(d);
+			}
+			return new GameResult(seed, winners, scores, tricks, engine.getHandsPlayed());
+		}
+	}
+
+	/**
+	 * Plays a range of seeds, storing each result at its offset from base.
+	 */
+	private final class PlayAll extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final GameResult[] results;
+		private final long base, from, to;
+
+		PlayAll(GameResult[] results, long base, long from, long to) {
+			this.results = results;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				Worker w = workers.get();
+				for (long seed = from; seed < to; ++seed) {
+					results[(int) (seed - base)] = w.play(seed);
+				}
+			} else {
+				long mid = from + (to - from) / 2;
+				invokeAll(new PlayAll(results, base, from, mid),
+						new PlayAll(results, base, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Hands out the results of a range of seeds in order, playing the next
+	 * batch of them across the pool whenever the last is used up.
+	 */
+	private final class Batches implements Spliterator<GameResult> {
+		private final GameResult[] batch;
+		private long next;	// first seed not yet played
+		private final long to;
+		private int index, count;	// position and size of the current batch
+
+		Batches(long from, long to) {
+			this.next = from;
+			this.to = to;
+			this.batch = new GameResult[(int) Math.min(to - from,
+					(long) BATCH * pool.getParallelism())];
+		}
+
+		public boolean tryAdvance(Consumer<? super GameResult> action) {
+			if (index == count) {
+				if (next == to) {
+					return false;
+				}
+				count = (int) Math.min(to - next, batch.length);
+				pool.invoke(new PlayAll(batch, next, next, next + count));
+				next += count;
+				index = 0;
+			}
+			GameResult r = batch[index];
+			batch[index++] = null;
+			action.accept(r);
+			return true;
+		}
+
+		public Spliterator<GameResult> trySplit() {
+			// the games are already played in parallel a batch at a time
+			return null;
+		}
+
+		public long estimateSize() {
+			return to - next + count - index;
+		}
+
+		public int characteristics() {
+			return ORDERED | SIZED | NONNULL | IMMUTABLE;
+		}
+	}
+
+	/**
+	 * Plays a range of seeds, reducing them to a summary.
+	 */
+	private final class Summarize extends RecursiveTask<SimulationSummary> {
+		private static final long serialVersionUID = 1L;
+		private final long from, to;
+
+		Summarize(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected SimulationSummary compute() {
+			if (to - from <= THRESHOLD) {
+				Worker w = workers.get();
+				SimulationSummary s = new SimulationSummary();
+				for (long seed = from; seed < to; ++seed) {
+					s.add(w.play(seed));
+				}
+				return s;
+			}
+			long mid = from + (to - from) / 2;
+			Summarize right = new Summarize(mid, to);
+			right.fork();
+			SimulationSummary s = new Summarize(from, mid).compute();
+			s.combine(right.join());
+			return s;
+		}
+	}
+}
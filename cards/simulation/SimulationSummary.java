@@ -0,0 +1,122 @@
+package cards.simulation;
+
+import cards.core.Player;
+
+/**
+ * Totals over a number of simulated games: scores, tricks and wins per
+ * player, and how often each combination of winners occurred. Summaries are
+ * built by adding results one at a time and combining partial summaries, so
+ * can be used to reduce a parallel stream, e.g.
+ *
+ * <pre>
+ * results.collect(SimulationSummary::new, SimulationSummary::add,
+ * 		SimulationSummary::combine)
+ * </pre>
+ *
+ */
+public final class SimulationSummary {
+	private long games;
+	private long hands;
+	private final long[] scores = new long[4];
+	private final long[] tricks = new long[4];
+	private final long[] wins = new long[4];
+	private final long[] winners = new long[16];	// indexed by winner mask
+
+	/**
+	 * Add the outcome of one game to this summary.
+	 *
+	 * @param r
+	 */
+	public void add(GameResult r) {
+		games++;
+		hands += r.getHands();
+		for (Player.Direction d : Player.Direction.values()) {
+			int i = d.ordinal();
+			scores[i] += r.getScore(d);
+			tricks[i] += r.getTricks(d);
+			if (r.isWinner(d)) {
+				wins[i]++;
+			}
+		}
+		winners[r.getWinnerMask()]++;
+	}
+
+	/**
+	 * Add all of the games in another summary to this one.
+	 *
+	 * @param other
+	 */
+	public void combine(SimulationSummary other) {
+		games += other.games;
+		hands += other.hands;
+		for (int i = 0; i != 4; ++i) {
+			scores[i] += other.scores[i];
+			tricks[i] += other.tricks[i];
+			wins[i] += other.wins[i];
+		}
+		for (int i = 0; i != 16; ++i) {
+			winners[i] += other.winners[i];
+		}
+	}
+
+	public long getGames() {
+		return games;
+	}
+
+	public long getHands() {
+		return hands;
+	}
+
+	/**
+	 * Get the sum of the final scores of the given player over all games.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public long getTotalScore(Player.Direction d) {
+		return scores[d.ordinal()];
+	}
+
+	/**
+	 * Get the total number of tricks the given player took over all games.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public long getTotalTricks(Player.Direction d) {
+		return tricks[d.ordinal()];
+	}
+
+	/**
+	 * Get the number of games the given player won, including shared wins.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public long getWins(Player.Direction d) {
+		return wins[d.ordinal()];
+	}
+
+	/**
+	 * Get the number of games won by exactly the given set of players (see
+	 * CardGame.getWinnerMask()).
+	 *
+	 * @param mask
+	 * @return
+	 */
+	public long getGamesWonBy(int mask) {
+		return winners[mask];
+	}
+
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append(games).append(" games, ").append(hands).append(" hands");
+		for (Player.Direction d : Player.Direction.values()) {
+			int i = d.ordinal();
+			b.append("\n").append(d).append(": wins=").append(wins[i])
+					.append(" score=").append(scores[i])
+					.append(" tricks=").append(tricks[i]);
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,241 @@
+package cards.solver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import cards.core.Card;
+import cards.util.AbstractCardGame;
+
+/**
+ * Solves large numbers of deals double dummy, under every suit of trumps
+ * (and no trumps) and with every seat on lead, writing the results to a
+ * DealTable. Deals are numbered, and spread over a fork-join pool whose idle
+ * threads steal ranges of deals from busy ones; each thread keeps its own
+ * solver, so none of the solving state is shared.
+ *
+ * Deals already in the table are skipped, so a run which was interrupted
+ * (or stopped with stop()) carries on where it left off when run again over
+ * the same range.
+ *
+ * Throughput is set by the solver. On one core, for North-South, about
+ * 125,000 deals of four cards a hand are solved a minute, 23,000 of six
+ * cards, but only 7 to 9 whole 13-card deals (see DoubleDummySolver): a
+ * million whole deals takes about 2,000 core-hours.
+ *
+ */
+public class BatchSolver {
+
+	/**
+	 * Supplies the four hands of each numbered deal.
+	 */
+	public interface DealSource {
+		/**
+		 * Write the hands of the given deal into hands, as a card mask for
+		 * each seat (see CardMask).
+		 *
+		 * @param deal
+		 * @param hands
+		 */
+		public void deal(long deal, long[] hands);
+	}
+
+	/**
+	 * Number of deals a task solves itself rather than splitting further.
+	 * Deals take very different times to solve, so this is kept small.
+	 */
+	private static final int THRESHOLD = 2;
+
+	private final DealTable table;
+	private final DealSource deals;
+	private final ForkJoinPool pool;
+	private volatile boolean stopped;
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+		protected Worker initialValue() {
+			return new Worker();
+		}
+	};
+
+	/**
+	 * Construct a batch solver which uses every available processor.
+	 *
+	 * @param table
+	 * @param deals
+	 */
+	public BatchSolver(DealTable table, DealSource deals) {
+		this(table, deals, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Construct a batch solver with the given level of parallelism.
+	 *
+	 * @param table
+	 * @param deals
+	 * @param parallelism
+	 */
+	public BatchSolver(DealTable table, DealSource deals, int parallelism) {
+		this.table = table;
+		this.deals = deals;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Get a source of deals where deal i is shuffled from a Random seeded
+	 * with i, as in SimulationRunner, and dealt round the table from North
+	 * until each seat has the given number of cards.
+	 *
+	 * @param cardsPerHand
+	 * @return
+	 */
+	public static DealSource seeded(int cardsPerHand) {
+		if (cardsPerHand < 1 || cardsPerHand > 13) {
+			throw new IllegalArgumentException("Invalid number of cards per hand " + cardsPerHand);
+		}
+		return new DealSource() {
+			public void deal(long deal, long[] hands) {
+				List<Card> deck = AbstractCardGame.createDeck();
+				Collections.shuffle(deck, new Random(deal));
+				for (int i = 0; i != 4; ++i) {
+					hands[i] = 0;
+				}
+				for (int i = 0; i != 4 * cardsPerHand; ++i) {
+					hands[i & 3] |= 1L << deck.get(i).index();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Get a source for deals imported from elsewhere, where deal i has the
+	 * four card masks in deals[i].
+	 *
+	 * @param deals
+	 * @return
+	 */
+	public static DealSource imported(long[][] deals) {
+		return new DealSource() {
+			public void deal(long deal, long[] hands) {
+				System.arraycopy(deals[(int) deal], 0, hands, 0, 4);
+			}
+		};
+	}
+
+	/**
+	 * Solve every deal from (inclusive) to (exclusive) which is not already
+	 * in the table, and flush the table.
+	 *
+	 * @param from
+	 * @param to
+	 * @return the number of deals solved by this call.
+	 * @throws IOException
+	 */
+	public long solve(long from, long to) throws IOException {
+		if (to < from || to - from > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Invalid deal range " + from + ".." + to);
+		}
+		stopped = false;
+		BitSet done = new BitSet((int) (to - from));
+		for (long deal = from; deal < Math.min(to, table.size()); ++deal) {
+			if (table.isSolved(deal)) {
+				done.set((int) (deal - from));
+			}
+		}
+		try {
+			return pool.invoke(new SolveAll(done, from, from, to));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			table.flush();
+		}
+	}
+
+	/**
+	 * Ask a run in progress to stop once the deals being solved are done.
+	 * The deals not yet solved can be solved by running again.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Shut down the worker threads. The solver cannot be used afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * The solver and buffers owned by one worker thread.
+	 */
+	private final class Worker {
+		// never cleared: an entry holds for any position of its partition,
+		// whatever the deal, and clearing costs more than a small deal takes
+		// to solve
+		private final DoubleDummySolver solver = new DoubleDummySolver();
+		private final Position position = new Position();
+		private final long[] hands = new long[4];
+		private final int[] sides = table.getSides();
+		private final int[] values = new int[table.values()];
+		private final ByteBuffer buffer = ByteBuffer.allocate(table.recordBytes());
+
+		void solve(long deal) throws IOException {
+			deals.deal(deal, hands);
+			for (int strain = 0; strain != DealTable.STRAINS; ++strain) {
+				int trumps = strain == DealTable.STRAINS - 1 ? Position.NO_TRUMPS : strain;
+				for (int leader = 0; leader != 4; ++leader) {
+					position.set(hands, trumps, leader);
+					for (int s = 0; s != sides.length; ++s) {
+						values[table.value(trumps, leader, s)] = solver.solve(position, sides[s]);
+					}
+				}
+			}
+			table.write(deal, values, buffer);
+		}
+	}
+
+	/**
+	 * Solves the deals of a range which are not yet done, where bit i of done
+	 * is set if deal base + i is done, and counts them.
+	 */
+	private final class SolveAll extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+		private final BitSet done;
+		private final long base, from, to;
+
+		SolveAll(BitSet done, long base, long from, long to) {
+			this.done = done;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Long compute() {
+			if (to - from <= THRESHOLD) {
+				Worker w = workers.get();
+				long n = 0;
+				for (long deal = from; deal < to && !stopped; ++deal) {
+					if (!done.get((int) (deal - base))) {
+						try {
+							w.solve(deal);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+						n++;
+					}
+				}
+				return n;
+			}
+			long mid = from + (to - from) / 2;
+			SolveAll right = new SolveAll(done, base, mid, to);
+			right.fork();
+			long n = new SolveAll(done, base, from, mid).compute();
+			return n + right.join();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package cards.solver;
+
+/**
+ * Maps positions onto a canonical form, so that positions which play the
+ * same way are recognised as one. Two kinds of symmetry are removed:
+ *
+ * <ul>
+ * <li>Only the order of the cards still in play matters, not their ranks.
+ * The live cards of each suit (those held, or in the current trick) are
+ * renumbered down from the Ace, so cards which have been played leave no
+ * gaps. In particular, cards in one hand with no live card between them
+ * become adjacent, which is what makes them equivalent (see
+ * representatives()).</li>
+ * <li>Suits other than trumps can be relabelled. Trumps become suit 0 (if
+ * there are trumps), and the other suits follow in a fixed order decided by
+ * who holds their cards and which of them are in the current trick. The
+ * suit led keeps its role, as the cards in the trick are relabelled too.</li>
+ * </ul>
+ *
+ * The canonicalizer remembers the mapping for the last position it was
+ * given, so that cards chosen in the canonical position (e.g. the best card
+ * of a solver) can be mapped back. Seats are not relabelled.
+ *
+ * A canonicalizer allocates nothing once constructed, and is not
+ * thread-safe.
+ *
+ */
+public final class Canonicalizer {
+	private static final int DEAD = -1;
+
+	private final int[] forward = new int[52];	// card to canonical card
+	private final int[] backward = new int[52];	// canonical card to card
+	private final int[] suits = new int[4];	// suits in canonical order
+	private final long[] signatures = new long[4];
+	private final long[] hands = new long[4];
+	private final int[] trick = new int[4];
+
+	public Canonicalizer() {
+		for (int i = 0; i != 52; ++i) {
+			forward[i] = DEAD;
+			backward[i] = DEAD;
+		}
+	}
+
+	/**
+	 * Construct the canonical form of the given position.
+	 *
+	 * @param position
+	 * @return
+	 */
+	public Position canonicalize(Position position) {
+		Position out = new Position();
+		canonicalize(position, out);
+		return out;
+	}
+
+	/**
+	 * Write the canonical form of the given position into out, which must
+	 * be a different object. The history of out is cleared.
+	 *
+	 * @param position
+	 * @param out
+	 */
+	public void canonicalize(Position position, Position out) {
+		Position p = position;
+		int trumps = p.trumps();
+		long live = p.remaining() | p.trickMask();
+		// order the suits: trumps first, then by decreasing signature
+		int n = 0;
+		if (trumps != Position.NO_TRUMPS) {
+			suits[n++] = trumps;
+		}
+		for (int suit = 0; suit != 4; ++suit) {
+			if (suit == trumps) {
+				continue;
+			}
+			long sig = signature(p, suit, live);
+			int j = n++;
+			while (j > 0 && suits[j - 1] != trumps && signatures[j - 1] < sig) {
+				suits[j] = suits[j - 1];
+				signatures[j] = signatures[j - 1];
+				j--;
+			}
+			suits[j] = suit;
+			signatures[j] = sig;
+		}
+		// renumber the live cards of each suit down from the Ace
+		for (int i = 0; i != 52; ++i) {
+			forward[i] = DEAD;
+			backward[i] = DEAD;
+		}
+		for (int c = 0; c != 4; ++c) {
+			long m = live & Position.suitMask(suits[c]);
+			for (int rank = 12; m != 0; --rank) {
+				long bit = Long.highestOneBit(m);
+				m ^= bit;
+				int card = Long.numberOfTrailingZeros(bit);
+				forward[card] = c * 13 + rank;
+				backward[c * 13 + rank] = card;
+			}
+		}
+		for (int seat = 0; seat != 4; ++seat) {
+			hands[seat] = toCanonical(p.hand(seat));
+		}
+		int size = p.trickSize();
+		for (int i = 0; i != size; ++i) {
+			trick[i] = forward[p.trickCard(i)];
+		}
+		out.set(hands, trumps == Position.NO_TRUMPS ? Position.NO_TRUMPS : 0,
+				p.leader(), trick, size);
+	}
+
+	/**
+	 * Get the canonical card for a live card of the last position
+	 * canonicalized, or -1 if the card is not live.
+	 *
+	 * @param card
+	 * @return
+	 */
+	public int toCanonical(int card) {
+		return forward[card];
+	}
+
+	/**
+	 * Get the card of the last position canonicalized for a canonical card,
+	 * or -1 if there is none.
+	 *
+	 * @param card
+	 * @return
+	 */
+	public int fromCanonical(int card) {
+		return backward[card];
+	}
+
+	/**
+	 * Map a card mask of live cards into the canonical position. Cards which
+	 * are not live are dropped.
+	 *
+	 * @param cards
+	 * @return
+	 */
+	public long toCanonical(long cards) {
+		long r = 0;
+		for (long m = cards; m != 0; m &= m - 1) {
+			int c = forward[Long.numberOfTrailingZeros(m)];
+			if (c != DEAD) {
+				r |= 1L << c;
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Map a card mask of the canonical position back into the last position
+	 * canonicalized.
+	 *
+	 * @param cards
+	 * @return
+	 */
+	public long fromCanonical(long cards) {
+		long r = 0;
+		for (long m = cards; m != 0; m &= m - 1) {
+			int c = backward[Long.numberOfTrailingZeros(m)];
+			if (c != DEAD) {
+				r |= 1L << c;
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Reduce a set of cards from one hand to one card from each group of
+	 * equivalent cards: cards of a suit with no live card between them. The
+	 * highest card of each group is kept.
+	 *
+	 * @param cards
+	 * @param live
+	 *            --- every card still held or in the current trick.
+	 * @return
+	 */
+	public static long representatives(long cards, long live) {
+		long r = cards;
+		for (long m = cards; m != 0; m &= m - 1) {
+			int c = Long.numberOfTrailingZeros(m);
+			// drop c if the next live card above it in its suit is in the set
+			long above = live & Position.suitMask(c / 13) & -(2L << c);
+			if ((cards & Long.lowestOneBit(above)) != 0) {
+				r &= ~(1L << c);
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Describe the live cards of a suit from the top down: three bits per
+	 * card giving its holder, or its place in the trick (plus four), below
+	 * the number of live cards. Suits with the same signature are
+	 * interchangeable.
+	 */
+	private static long signature(Position p, int suit, long live) {
+		long m = live & Position.suitMask(suit);
+		long sig = Long.bitCount(m);
+		while (m != 0) {
+			long bit = Long.highestOneBit(m);
+			m ^= bit;
+			int code = 0;
+			while (code != 4 && (p.hand(code) & bit) == 0) {
+				code++;
+			}
+			if (code == 4) {
+				int card = Long.numberOfTrailingZeros(bit);
+				while (p.trickCard(code - 4) != card) {
+					code++;
+				}
+			}
+			sig = (sig << 3) | code;
+		}
+		return sig;
+	}
+}
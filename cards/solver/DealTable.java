@@ -0,0 +1,294 @@
+package cards.solver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of double-dummy results, with one fixed-size record per deal so
+ * that the results for deal i are found at a known offset. Each record
+ * holds the tricks taken by each of a fixed list of sides (see
+ * DoubleDummySolver) for every suit of trumps, or none, and every leader, at
+ * four bits each, preceded by a flag byte which is set once the record is
+ * complete.
+ *
+ * Records are written with positional writes, so any number of threads may
+ * write different deals at once, and deals may be written in any order. The
+ * values of a record are written straight away, but its flag byte is held
+ * back and only written once the values have been forced to the disk. This
+ * is done for a batch of records at a time: when COMMIT_DEALS records are
+ * waiting, when a second has passed since the last batch, and on flush() and
+ * close(). So even after a crash or power failure, a deal which reads as
+ * solved has its values in place, while the deals of the last batch may
+ * read as unsolved and be solved again. The file simply grows to cover the
+ * highest deal written, and a deal whose record was never written reads as
+ * unsolved, so an interrupted run can be resumed by solving the deals which
+ * are not yet solved.
+ *
+ */
+public final class DealTable implements Closeable {
+	/**
+	 * Number of trump settings: each suit, and no trumps.
+	 */
+	public static final int STRAINS = 5;
+	/**
+	 * Largest number of sides a table can hold.
+	 */
+	public static final int MAX_SIDES = 6;
+
+	private static final int MAGIC = 0x57445431;	// "WDT1"
+	private static final int HEADER_BYTES = 32;
+	private static final byte SOLVED = 1;
+	private static final int COMMIT_DEALS = 64;	// most flags held back
+	private static final long COMMIT_NANOS = 1000000000L;
+
+	private final FileChannel channel;
+	private final int[] sides;
+	private final int recordBytes;
+	// deals whose values are written but not yet forced and flagged;
+	// guarded by the lock on itself, as are the fields after it
+	private final long[] pending = new long[COMMIT_DEALS];
+	private int pendingCount;
+	private long lastCommit = System.nanoTime();
+	private final ByteBuffer flag = ByteBuffer.allocate(1);
+
+	private DealTable(FileChannel channel, int[] sides) {
+		this.channel = channel;
+		this.sides = sides.clone();
+		this.recordBytes = recordBytes(sides.length);
+	}
+
+	/**
+	 * Open the table in the given file, creating it if it does not exist.
+	 * An existing file must hold results for the same sides.
+	 *
+	 * @param file
+	 * @param sides
+	 *            --- side masks (see DoubleDummySolver), at most MAX_SIDES.
+	 * @return
+	 * @throws IOException
+	 */
+	public static DealTable open(Path file, int[] sides) throws IOException {
+		if (sides.length == 0 || sides.length > MAX_SIDES) {
+			throw new IllegalArgumentException("Need between 1 and " + MAX_SIDES + " sides");
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			if (channel.size() == 0) {
+				header.putInt(MAGIC).putInt(sides.length);
+				for (int side : sides) {
+					header.putInt(side);
+				}
+				header.clear();
+				write(channel, header, 0);
+			} else {
+				read(channel, header, 0);
+				if (header.getInt(0) != MAGIC) {
+					throw new IOException(file + " is not a deal table");
+				}
+				boolean same = header.getInt(4) == sides.length;
+				for (int i = 0; same && i != sides.length; ++i) {
+					same = header.getInt(8 + 4 * i) == sides[i];
+				}
+				if (!same) {
+					throw new IOException(file + " holds results for different sides");
+				}
+			}
+			return new DealTable(channel, sides);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the side masks this table holds results for.
+	 *
+	 * @return
+	 */
+	public int[] getSides() {
+		return sides.clone();
+	}
+
+	/**
+	 * Get the number of deals the file has room for, solved or not.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public long size() throws IOException {
+		return Math.max(0, (channel.size() - HEADER_BYTES) / recordBytes);
+	}
+
+	/**
+	 * Check whether the results for the given deal have been written.
+	 *
+	 * @param deal
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean isSolved(long deal) throws IOException {
+		ByteBuffer flag = ByteBuffer.allocate(1);
+		return channel.read(flag, offset(deal)) == 1 && flag.get(0) == SOLVED;
+	}
+
+	/**
+	 * Get the number of tricks the given side takes in the given deal, or -1
+	 * if the deal has not been solved.
+	 *
+	 * @param deal
+	 * @param trumps
+	 *            --- suit ordinal, or Position.NO_TRUMPS.
+	 * @param leader
+	 *            --- seat ordinal of the opening leader.
+	 * @param side
+	 *            --- index into getSides().
+	 * @return
+	 * @throws IOException
+	 */
+	public int tricks(long deal, int trumps, int leader, int side) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(recordBytes);
+		if (channel.read(record, offset(deal)) != recordBytes
+				|| record.get(0) != SOLVED) {
+			return -1;
+		}
+		int i = value(trumps, leader, side);
+		return (record.get(1 + i / 2) >>> (4 * (i & 1))) & 0xF;
+	}
+
+	/**
+	 * Write the results for a deal, given in the order of value(), using
+	 * buffer (which must hold recordBytes() bytes) as scratch space. The deal
+	 * reads as solved once its batch is committed (see above).
+	 *
+	 * @param deal
+	 * @param values
+	 * @param buffer
+	 * @throws IOException
+	 */
+	void write(long deal, int[] values, ByteBuffer buffer) throws IOException {
+		long at = offset(deal);
+		buffer.clear();
+		for (int i = 0; i < values.length; i += 2) {
+			int hi = i + 1 < values.length ? values[i + 1] : 0;
+			buffer.put((byte) (values[i] | hi << 4));
+		}
+		buffer.flip();
+		write(channel, buffer, at + 1);
+		synchronized (pending) {
+			pending[pendingCount++] = deal;
+			if (pendingCount == pending.length
+					|| System.nanoTime() - lastCommit >= COMMIT_NANOS) {
+				commit();
+			}
+		}
+	}
+
+	/**
+	 * Force the values written so far to the disk, and only then mark their
+	 * records solved. Called holding the lock on pending.
+	 */
+	private void commit() throws IOException {
+		lastCommit = System.nanoTime();
+		if (pendingCount == 0) {
+			return;
+		}
+		channel.force(false);
+		for (int i = 0; i != pendingCount; ++i) {
+			flag.clear();
+			flag.put(SOLVED);
+			flag.flip();
+			write(channel, flag, offset(pending[i]));
+		}
+		pendingCount = 0;
+	}
+
+	/**
+	 * Get the place of the given result in the values of a record.
+	 *
+	 * @param trumps
+	 * @param leader
+	 * @param side
+	 * @return
+	 */
+	int value(int trumps, int leader, int side) {
+		int strain = trumps == Position.NO_TRUMPS ? STRAINS - 1 : trumps;
+		return (strain * 4 + leader) * sides.length + side;
+	}
+
+	/**
+	 * Get the number of results in a record.
+	 *
+	 * @return
+	 */
+	int values() {
+		return STRAINS * 4 * sides.length;
+	}
+
+	/**
+	 * Get the size of a record in bytes.
+	 *
+	 * @return
+	 */
+	int recordBytes() {
+		return recordBytes;
+	}
+
+	/**
+	 * Commit the results written so far and flush them to the disk.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		synchronized (pending) {
+			commit();
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Flush the table (see flush()) and close the file.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private long offset(long deal) {
+		if (deal < 0) {
+			throw new IllegalArgumentException("Invalid deal " + deal);
+		}
+		return HEADER_BYTES + deal * recordBytes;
+	}
+
+	private static int recordBytes(int sides) {
+		return 1 + (STRAINS * 4 * sides + 1) / 2;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, long at)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			at += channel.write(buffer, at);
+		}
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, long at)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, at + buffer.position()) < 0) {
+				break;
+			}
+		}
+		buffer.flip();
+	}
+}
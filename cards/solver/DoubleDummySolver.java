@@ -0,0 +1,957 @@
+package cards.solver;
+
+import java.util.Arrays;
+
+import cards.core.*;
+
+/**
+ * Computes the exact number of tricks one side can take from a position in
+ * which all four hands are known ("double dummy"), assuming both sides play
+ * perfectly. A side is any set of seats, given as a mask with bit
+ * seat.ordinal() set for each member: e.g. NORTH_SOUTH for partnership
+ * Whist, or a single seat when each player scores for themselves. Everyone
+ * not on the side plays to minimise its tricks.
+ *
+ * The result is first bounded by the tricks each side is sure of, then found
+ * by alpha-beta over cards with null-window searches: for the same deal as
+ * the last solve, stepping from that result a trick at a time (MTD(f)),
+ * and otherwise halving the range each time. Moves are ordered so that the
+ * card the table remembers, then the lead which last cut off at the same
+ * depth, then sure winners, leads towards partner's winners and cheap
+ * discards are tried first, and of several cards in one hand which are
+ * adjacent once played cards are removed, only one is tried. Each trick
+ * starts by counting the tricks the leader can cash straight away, either
+ * from their own hand or after crossing to their partner's.
+ *
+ * Results at the start of each trick are cached in a transposition table by
+ * partition: the search works out which cards' ranks actually decided the
+ * result, and the entry then applies to every position with the same suit
+ * lengths in each hand and the same holders of those cards, whoever holds
+ * the smaller cards. A side and its opponents share entries, as solving for
+ * one solves for the other, and entries carry over between solves until
+ * clear(), so solving one deal for each leader and side in turn reuses most
+ * of the work.
+ *
+ * Whole deals are still not quick. On one core, a first solve of each of 20
+ * seeded 13-card deals took a median of about 0.3 s, with a quarter over
+ * 1 s and the worst about 6 s. Solving each of 10 deals for both sides with
+ * every leader and trumps (40 solves a deal) took a median of 4 s a deal.
+ * Endgames of up to six tricks average under a millisecond. Budget
+ * accordingly, e.g. by solving whole deals in batches (see BatchSolver)
+ * rather than while a player waits.
+ *
+ * A solver is not thread-safe, but can be reused for any number of solves.
+ *
+ */
+public final class DoubleDummySolver {
+	/**
+	 * Side mask for North and South playing together.
+	 */
+	public static final int NORTH_SOUTH = 0x5;
+	/**
+	 * Side mask for East and West playing together.
+	 */
+	public static final int EAST_WEST = 0xA;
+
+	private static final long EMPTY = 0xFFFF;
+	private static final long NO_PATTERNS = -1L;
+	private static final int PATTERN_WORDS = 8;	// longs of partitions per slot
+
+	private final TranspositionTable table;
+	private Tablebase tablebase;
+	private Tablebase probe;	// tablebase if it supports the side, or null
+	private int rootLeft;	// tricks left at the start of the search
+	// the recent partitions (see partition()) stored for each set of suit
+	// lengths, four to a long and PATTERN_WORDS longs to a slot
+	private final long[] patternKeys;
+	private final long[] patternSlots;
+	private final int[][] moves = new int[53][13];
+	private final int[][] scores = new int[53][13];
+	private final long[] relevant = new long[54];	// cards whose rank mattered
+	private final int[] killers = new int[53];	// last lead to cut off, per ply
+	private final long[] holders = new long[14 * 4];	// see holders()
+	private Position pos;
+	private int side;
+	private long salt;
+	private int bestCard;
+	private long nodes;
+	private long quickCards;	// cards counted by cashable()
+	private int sureLower;	// bounds found by the last sureTricks()
+	private int sureUpper;
+	private int guess;	// result of the last solve
+	private final long[] lastHands = new long[4];	// hands of the last solve
+
+	/**
+	 * Construct a solver with its own transposition table of about a million
+	 * entries.
+	 */
+	public DoubleDummySolver() {
+		this(new HeapTranspositionTable(1 << 20));
+	}
+
+	/**
+	 * Construct a solver which caches positions in the given table.
+	 *
+	 * @param table
+	 */
+	public DoubleDummySolver(TranspositionTable table) {
+		this.table = table;
+		patternKeys = new long[1 << 16];
+		patternSlots = new long[PATTERN_WORDS << 16];
+		clearPatterns();
+		Arrays.fill(killers, TranspositionTable.NO_CARD);
+	}
+
+	/**
+	 * Solve the current position of the given game (see Position.of()).
+	 *
+	 * @param game
+	 * @param sideMask
+	 * @return the number of the remaining tricks, including the current one,
+	 *         which the side takes.
+	 */
+	public int solve(CardGame game, int sideMask) {
+		return solve(Position.of(game), sideMask);
+	}
+
+	/**
+	 * Solve the given position, which is left unchanged.
+	 *
+	 * @param position
+	 * @param sideMask
+	 * @return the number of the remaining tricks, including the current one,
+	 *         which the side takes.
+	 */
+	public int solve(Position position, int sideMask) {
+		if ((sideMask & 1) == 0) {
+			// the other seats take the rest, and the same cards do best for
+			// both: so solve for the side with North in it, and a side and
+			// its opponents share transposition table entries
+			return position.tricksLeft() - solve(position, ~sideMask & 0xF);
+		}
+		if (tablebase != null && tablebase.covers(position)
+				&& Tablebase.supports(sideMask)) {
+			return lookup(position, sideMask);
+		}
+		pos = position;
+		side = sideMask;
+		probe = Tablebase.supports(sideMask) ? tablebase : null;
+		rootLeft = position.tricksLeft();
+		// positions are only comparable with the same trumps and side
+		salt = mix(0x100 + (position.trumps() + 1) * 16 + sideMask);
+		int tricks = position.tricksLeft();
+		boolean maximising = ((sideMask >>> position.toPlay()) & 1) != 0;
+		int lo = 0;
+		int hi = tricks;
+		if (position.trickSize() == 0 && tricks != 0) {
+			// the sure tricks bound the result before any search
+			sureTricks(-1, tricks + 1, 0);
+			lo = sureLower;
+			hi = sureUpper;
+		}
+		// test one target at a time with null-window searches. The same
+		// deal with another leader or trumps usually comes out close to the
+		// last result, so step from that one trick at a time (MTD(f));
+		// otherwise halve the range each time. A search which fails towards
+		// the player to move has found a card proving its bound.
+		boolean step = sameDeal(position);
+		int card = TranspositionTable.NO_CARD;
+		int target = step ? Math.max(lo + 1, Math.min(hi, guess))
+				: (lo + hi + 1) >>> 1;
+		while (lo < hi || card == TranspositionTable.NO_CARD && tricks != 0) {
+			if (lo == hi) {
+				if (maximising ? lo == 0 : lo == tricks) {
+					// every card gives the same result
+					card = Long.numberOfTrailingZeros(position.legalMoves());
+					break;
+				}
+				// the bounds met before a search found a card proving them
+				target = maximising ? lo : lo + 1;
+			}
+			bestCard = TranspositionTable.NO_CARD;
+			int v = search(target - 1, target, 0);
+			if (v >= target) {
+				lo = Math.max(lo, v);
+				if (maximising) {
+					card = bestCard;
+				}
+				target = step ? lo + 1 : (lo + hi + 1) >>> 1;
+			} else {
+				hi = Math.min(hi, v);
+				if (!maximising) {
+					card = bestCard;
+				}
+				target = step ? hi : (lo + hi + 1) >>> 1;
+			}
+		}
+		bestCard = card;
+		guess = lo;
+		pos = null;
+		return lo;
+	}
+
+	/**
+	 * Check whether the given position has the same hands as the last one
+	 * solved, and remember its hands for next time.
+	 */
+	private boolean sameDeal(Position position) {
+		boolean same = true;
+		for (int i = 0; i != 4; ++i) {
+			long hand = position.hand(i);
+			same &= hand == lastHands[i];
+			lastHands[i] = hand;
+		}
+		return same;
+	}
+
+	/**
+	 * Solve a position covered by the tablebase, finding the best card by
+	 * looking up the position after each card.
+	 */
+	private int lookup(Position position, int sideMask) {
+		int tricks = tablebase.tricks(position, sideMask);
+		bestCard = TranspositionTable.NO_CARD;
+		long moves = Canonicalizer.representatives(position.legalMoves(),
+				position.remaining() | position.trickMask());
+		for (long m = moves; m != 0 && bestCard == TranspositionTable.NO_CARD; m &= m - 1) {
+			int card = Long.numberOfTrailingZeros(m);
+			position.play(card);
+			int won = position.trickSize() == 0
+					&& ((sideMask >>> position.leader()) & 1) != 0 ? 1 : 0;
+			if (won + tablebase.tricks(position, sideMask) == tricks) {
+				bestCard = card;
+			}
+			position.undo();
+		}
+		return tricks;
+	}
+
+	/**
+	 * Solve the given position once for each seat playing alone against the
+	 * other three, as when every player scores for themselves.
+	 *
+	 * @param position
+	 * @return the number of remaining tricks each seat can take, indexed by
+	 *         seat ordinal.
+	 */
+	public int[] solveSeats(Position position) {
+		int[] tricks = new int[4];
+		for (int i = 0; i != 4; ++i) {
+			tricks[i] = solve(position, 1 << i);
+		}
+		return tricks;
+	}
+
+	/**
+	 * Answer positions covered by the given tablebase, or none if null, by
+	 * looking them up instead of searching. Within a search, the positions at
+	 * the end of the first trick are looked up too. Deeper ones are not: the
+	 * table cannot say which cards' ranks decided the result, so every card
+	 * left has to count, and the partitions stored at every trick above then
+	 * keep every card too and match nothing else. Probing at every covered
+	 * trick made whole deals take 2.5 times as many nodes.
+	 *
+	 * @param tablebase
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Get a card which achieves the result of the last solve for the player
+	 * who was to play, or NO_CARD if there were no cards left.
+	 *
+	 * @return card index
+	 */
+	public int getBestCard() {
+		return bestCard;
+	}
+
+	/**
+	 * Get the number of positions visited since the solver was created.
+	 *
+	 * @return
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Clear the transposition table.
+	 */
+	public void clear() {
+		table.clear();
+		clearPatterns();
+		Arrays.fill(killers, TranspositionTable.NO_CARD);
+	}
+
+	// ========================================================
+	// Search
+	// ========================================================
+
+	/**
+	 * Search the current position, returning the number of tricks from here
+	 * (including the current trick) which the side takes. The result is exact
+	 * if it lies strictly between alpha and beta, and otherwise a bound. On
+	 * return, relevant[ply] holds the cards whose rank the result depends on.
+	 */
+	private int search(int alpha, int beta, int ply) {
+		nodes++;
+		Position p = pos;
+		int left = p.tricksLeft();
+		// the side takes between none and all of the remaining tricks
+		relevant[ply] = 0;
+		if (left <= alpha) {
+			return left;
+		}
+		if (beta <= 0) {
+			return 0;
+		}
+		int ttCard = TranspositionTable.NO_CARD;
+		long base = 0;
+		boolean boundary = p.trickSize() == 0;
+		if (boundary) {
+			base = mix(lengths() + p.leader()) ^ salt;
+			holders(left);
+			int slot = slot(base);
+			for (int i = 0; i != PATTERN_WORDS * 64 && patternKeys[slot] == base; i += 16) {
+				long kept = (patternSlots[slot * PATTERN_WORDS + i / 64] >>> (i & 63)) & 0xFFFF;
+				if (kept == EMPTY) {
+					continue;
+				}
+				long e = table.probe(key(base, kept, left));
+				if (e == TranspositionTable.MISS
+						|| TranspositionTable.depth(e) != left) {
+					continue;
+				}
+				ttCard = absolute(TranspositionTable.bestCard(e));
+				// at the root, only use the table to order moves, so that
+				// the best card is always found by searching
+				if (ply != 0) {
+					int lower = TranspositionTable.lower(e);
+					int upper = TranspositionTable.upper(e);
+					if (lower >= beta || upper <= alpha || lower == upper) {
+						relevant[ply] = top(kept);
+						return lower >= beta ? lower : upper;
+					}
+				}
+			}
+			if (ply != 0) {
+				int v = sureTricks(alpha, beta, ply);
+				if (v >= 0) {
+					return v;
+				}
+				// see setTablebase() for why only the first trick is probed
+				if (probe != null && left == rootLeft - 1 && probe.covers(p)) {
+					relevant[ply] = p.remaining();
+					return probe.tricks(p, side);
+				}
+			}
+		}
+		int me = p.toPlay();
+		boolean maximising = ((side >>> me) & 1) != 0;
+		int n = generate(ply, ttCard);
+		int[] ms = moves[ply];
+		int best = maximising ? -1 : left + 1;
+		int bestMove = ms[0];
+		long rel = 0;
+		boolean cut = false;
+		for (int i = 0; i != n; ++i) {
+			int m = ms[i];
+			// the rank of the card winning a trick matters if it beat
+			// another card of its suit
+			long decided = 0;
+			if (p.trickSize() == 3) {
+				int w = p.beats(m) ? m : p.winningCard();
+				long suit = (p.trickMask() | (1L << m))
+						& Position.suitMask(w / 13);
+				if (Long.bitCount(suit) > 1) {
+					decided = 1L << w;
+				}
+			}
+			p.play(m);
+			int won = p.trickSize() == 0 && ((side >>> p.leader()) & 1) != 0 ? 1 : 0;
+			int v = won + search(alpha - won, beta - won, ply + 1);
+			p.undo();
+			long r = relevant[ply + 1] | decided;
+			if (maximising ? v > best : v < best) {
+				best = v;
+				bestMove = m;
+				if (maximising ? best >= beta : best <= alpha) {
+					// only the line which caused the cut-off matters
+					rel = r;
+					if (boundary) {
+						killers[ply] = m;
+					}
+					cut = true;
+					break;
+				}
+			}
+			rel |= r;
+		}
+		if (!cut) {
+			rel |= equivalents(rel);
+		}
+		if (ply == 0) {
+			bestCard = bestMove;
+		}
+		if (boundary) {
+			long kept = partition(rel);
+			rel = top(kept);
+			int lower = best >= beta ? best : best <= alpha ? 0 : best;
+			int upper = best <= alpha ? best : best >= beta ? left : best;
+			long key = key(base, kept, left);
+			long e = table.probe(key);
+			if (e != TranspositionTable.MISS
+					&& TranspositionTable.depth(e) == left) {
+				// narrow the bounds already known for this partition
+				lower = Math.max(lower, TranspositionTable.lower(e));
+				upper = Math.min(upper, TranspositionTable.upper(e));
+			}
+			table.store(key, lower, upper, left, relative(bestMove));
+			addPattern(base, kept);
+		}
+		relevant[ply] = rel;
+		return best;
+	}
+
+	/**
+	 * Get the cards which must be added to the given relevant cards when
+	 * every move has been searched. Only the highest of several equivalent
+	 * cards was tried, which is only sound for positions where they are
+	 * still equivalent: so if the highest is kept by the partition, the
+	 * others must be kept too.
+	 */
+	private long equivalents(long rel) {
+		Position p = pos;
+		long legal = p.legalMoves();
+		long tried = Canonicalizer.representatives(legal,
+				p.remaining() | p.trickMask());
+		if (legal == tried) {
+			return 0;
+		}
+		long extra = 0;
+		for (int suit = 0; suit != 4; ++suit) {
+			long mask = Position.suitMask(suit);
+			long cards = legal & mask;
+			long r = rel & mask;
+			// the partition keeps every card down to the lowest relevant one
+			long line = r == 0 ? Long.MAX_VALUE : Long.lowestOneBit(r);
+			boolean kept = false;
+			while (cards != 0) {
+				long bit = Long.highestOneBit(cards);
+				cards ^= bit;
+				if ((tried & bit) != 0) {
+					kept = bit >= line;
+				} else if (kept && bit < line) {
+					extra |= bit;
+					line = bit;
+				}
+			}
+		}
+		return extra;
+	}
+
+	/**
+	 * Check the tricks either side is sure of at the start of a trick: the
+	 * leader can cash their top cards before losing the lead, or cross to a
+	 * partner's top cards and cash those, and whoever holds the top trumps
+	 * wins a trick with each of them. If this decides the search, return the
+	 * bound found and set relevant[ply]; otherwise return -1.
+	 */
+	private int sureTricks(int alpha, int beta, int ply) {
+		Position p = pos;
+		int leader = p.leader();
+		int trumps = p.trumps();
+		quickCards = 0;
+		int quick = cashable(leader);
+		long rel = quickCards;
+		long hand = p.hand(leader);
+		for (int i = 1; i != 4; ++i) {
+			int partner = (leader + i) & 3;
+			if (!sameSide(partner, leader) || p.hand(partner) == 0) {
+				continue;
+			}
+			// the leader needs a card to lead to one of partner's top cards
+			long entries = 0;
+			for (int suit = 0; suit != 4; ++suit) {
+				long mask = Position.suitMask(suit);
+				if ((hand & mask) != 0
+						&& run(partner, suit, topCards(partner, suit)) != 0) {
+					entries |= mask;
+				}
+			}
+			if (entries == 0) {
+				continue;
+			}
+			quickCards = 0;
+			int q = cashable(partner);
+			if (q > quick) {
+				quick = q;
+				rel = quickCards;
+			}
+		}
+		int mine = 0;
+		int theirs = 0;
+		if (((side >>> leader) & 1) != 0) {
+			mine = quick;
+		} else {
+			theirs = quick;
+		}
+		if (trumps >= 0) {
+			long t = p.remaining() & Position.suitMask(trumps);
+			if (t != 0) {
+				int seat = holder(Long.highestOneBit(t));
+				long top = topCards(seat, trumps);
+				int run = Long.bitCount(top);
+				rel |= top;
+				if (((side >>> seat) & 1) != 0) {
+					mine = Math.max(mine, run);
+				} else {
+					theirs = Math.max(theirs, run);
+				}
+			}
+		}
+		int left = p.tricksLeft();
+		sureLower = mine;
+		sureUpper = left - theirs;
+		if (mine >= beta) {
+			relevant[ply] = rel;
+			return mine;
+		}
+		if (left - theirs <= alpha) {
+			relevant[ply] = rel;
+			return left - theirs;
+		}
+		return -1;
+	}
+
+	/**
+	 * Count the tricks the given seat can cash from the top of its suits
+	 * once it has the lead, adding the cards which win them to quickCards.
+	 */
+	private int cashable(int seat) {
+		int quick = 0;
+		boolean forced = false;
+		for (int suit = 0; suit != 4; ++suit) {
+			long cashed = topCards(seat, suit);
+			int run = run(seat, suit, cashed);
+			if (run == 0) {
+				continue;
+			}
+			quickCards |= cashed;
+			if (mustRuff(seat, suit)) {
+				// a partner ruffs the first of these, and takes the lead
+				forced = true;
+			} else {
+				quick += run;
+			}
+		}
+		return forced ? quick + 1 : quick;
+	}
+
+	/**
+	 * Get the cards of the given suit held by the given seat which are
+	 * higher than every other card of the suit still held.
+	 */
+	private long topCards(int seat, int suit) {
+		Position p = pos;
+		long mask = Position.suitMask(suit);
+		long mine = p.hand(seat) & mask;
+		long theirs = p.remaining() & mask & ~mine;
+		return theirs == 0 ? mine : mine & -(Long.highestOneBit(theirs) << 1);
+	}
+
+	/**
+	 * Get how many of the given top cards of a suit the given seat can cash
+	 * in a row: an opponent with trumps ruffs once they run out of the suit.
+	 */
+	private int run(int seat, int suit, long cashed) {
+		Position p = pos;
+		int trumps = p.trumps();
+		int run = Long.bitCount(cashed);
+		if (run != 0 && trumps >= 0 && suit != trumps) {
+			for (int i = 1; i != 4; ++i) {
+				int other = (seat + i) & 3;
+				if (!sameSide(other, seat)
+						&& (p.hand(other) & Position.suitMask(trumps)) != 0) {
+					run = Math.min(run, Long.bitCount(p.hand(other)
+							& Position.suitMask(suit)));
+				}
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Check whether a partner of the given seat holds nothing but trumps,
+	 * and so must ruff a lead of the given suit.
+	 */
+	private boolean mustRuff(int seat, int suit) {
+		Position p = pos;
+		int trumps = p.trumps();
+		if (trumps < 0 || suit == trumps) {
+			return false;
+		}
+		long t = Position.suitMask(trumps);
+		for (int i = 1; i != 4; ++i) {
+			int other = (seat + i) & 3;
+			long h = p.hand(other);
+			if (sameSide(other, seat) && h != 0 && (h & ~t) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Generate the moves worth trying at the given ply, best first, and
+	 * return how many there are. The card from the table comes first and
+	 * then, at the start of a trick, the last lead to cause a cut-off at this
+	 * ply, which is often as good in the sibling positions searched next. Of
+	 * several equivalent cards (see Canonicalizer.representatives()), only the
+	 * highest is generated.
+	 */
+	private int generate(int ply, int ttCard) {
+		Position p = pos;
+		long legal = Canonicalizer.representatives(p.legalMoves(),
+				p.remaining() | p.trickMask());
+		int[] ms = moves[ply];
+		int[] sc = scores[ply];
+		int me = p.toPlay();
+		int count = p.trickSize();
+		int trumps = p.trumps();
+		int n = 0;
+		int killer = count == 0 ? killers[ply] : TranspositionTable.NO_CARD;
+		for (long m = legal; m != 0; m &= m - 1) {
+			int c = Long.numberOfTrailingZeros(m);
+			int score = c == ttCard ? 10000 : c == killer ? 9000 : score(c,
+					me, count, trumps);
+			// insertion sort, best first
+			int j = n++;
+			while (j > 0 && sc[j - 1] < score) {
+				ms[j] = ms[j - 1];
+				sc[j] = sc[j - 1];
+				j--;
+			}
+			ms[j] = c;
+			sc[j] = score;
+		}
+		return n;
+	}
+
+	/**
+	 * Score a card for move ordering: higher scores are tried first.
+	 */
+	private int score(int c, int me, int count, int trumps) {
+		Position p = pos;
+		int suit = c / 13;
+		int rank = c % 13;
+		long remaining = p.remaining();
+		if (count == 0) {
+			long s = remaining & Position.suitMask(suit);
+			long top = Long.highestOneBit(s);
+			int owner = holder(top);
+			boolean ruffed = suit != trumps && trumps >= 0
+					&& canRuff(me, suit, trumps);
+			if (ruffed) {
+				// leading into a ruff is rarely right
+				return 50 - rank;
+			}
+			if ((1L << c) == top) {
+				// a sure winner
+				return 600 + rank;
+			}
+			if (owner != me && sameSide(owner, me)) {
+				// lead low towards partner's winner
+				return 500 - rank;
+			}
+			return 100 - rank;
+		}
+		boolean mineWinning = sameSide(p.winner(), me);
+		if (mineWinning) {
+			if (!opponentCanBeat(me, count, p.winningCard())) {
+				// the trick is safe, so play the cheapest card
+				return suit == trumps && suit != p.leadSuit() ? 250 - rank
+						: 400 - rank;
+			}
+			if (p.beats(c) && !opponentCanBeat(me, count, c)) {
+				// overtake to make the trick safe
+				return 350 - rank;
+			}
+			return suit == trumps && suit != p.leadSuit() ? 50 - rank
+					: 200 - rank;
+		}
+		if (p.beats(c)) {
+			if (!opponentCanBeat(me, count, c)) {
+				// cheapest card sure to win
+				return 450 - rank;
+			}
+			return 150 - rank;
+		}
+		if (partnerCanBeat(me, count, p.winningCard())) {
+			// play low and leave the trick to partner
+			return 300 - rank - (suit == trumps ? 50 : 0);
+		}
+		return 100 - rank - (suit == trumps ? 50 : 0);
+	}
+
+	/**
+	 * Check whether two seats are on the same side.
+	 */
+	private boolean sameSide(int a, int b) {
+		return (((side >>> a) ^ (side >>> b)) & 1) == 0;
+	}
+
+	/**
+	 * Get the seat holding the card given as a single-bit mask.
+	 */
+	private int holder(long bit) {
+		Position p = pos;
+		return (p.hand(0) & bit) != 0 ? 0 : (p.hand(1) & bit) != 0 ? 1
+				: (p.hand(2) & bit) != 0 ? 2 : 3;
+	}
+
+	/**
+	 * Check whether an opponent of the leader can ruff a lead of the given
+	 * suit.
+	 */
+	private boolean canRuff(int me, int suit, int trumps) {
+		Position p = pos;
+		for (int i = 1; i != 4; ++i) {
+			int seat = (me + i) & 3;
+			long h = p.hand(seat);
+			if (!sameSide(seat, me) && (h & Position.suitMask(suit)) == 0
+					&& (h & Position.suitMask(trumps)) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether the given seat, yet to play to the current trick, holds
+	 * a card which would beat the given card.
+	 */
+	private boolean canBeat(int seat, int card) {
+		Position p = pos;
+		long h = p.hand(seat);
+		int lead = p.leadSuit();
+		long follow = h & Position.suitMask(lead);
+		int suit = card / 13;
+		if (follow != 0) {
+			return suit == lead && (follow & -(2L << card)) != 0;
+		}
+		int trumps = p.trumps();
+		if (trumps < 0) {
+			return false;
+		}
+		long t = h & Position.suitMask(trumps);
+		if (suit == trumps) {
+			return (t & -(2L << card)) != 0;
+		}
+		return t != 0;
+	}
+
+	/**
+	 * Check whether an opponent still to play to the current trick can beat
+	 * the given card.
+	 */
+	private boolean opponentCanBeat(int me, int count, int card) {
+		for (int i = count + 1; i < 4; ++i) {
+			int seat = (pos.leader() + i) & 3;
+			if (!sameSide(seat, me) && canBeat(seat, card)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether a partner still to play to the current trick can beat
+	 * the given card.
+	 */
+	private boolean partnerCanBeat(int me, int count, int card) {
+		for (int i = count + 1; i < 4; ++i) {
+			int seat = (pos.leader() + i) & 3;
+			if (sameSide(seat, me) && canBeat(seat, card)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// ========================================================
+	// Partitions
+	// ========================================================
+
+	/**
+	 * Pack the length of every suit in every hand into four bits each.
+	 */
+	private long lengths() {
+		Position p = pos;
+		long key = 0;
+		for (int seat = 0; seat != 4; ++seat) {
+			long hand = p.hand(seat);
+			for (int suit = 0; suit != 4; ++suit) {
+				key = (key << 4)
+						| Long.bitCount(hand & Position.suitMask(suit));
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Work out the partition for a set of relevant cards: for each suit, how
+	 * many of its remaining cards, from the top down to the lowest relevant
+	 * one, must be held by the same players. This is packed into four bits
+	 * per suit.
+	 */
+	private long partition(long rel) {
+		long remaining = pos.remaining();
+		long kept = 0;
+		for (int suit = 3; suit >= 0; --suit) {
+			long r = rel & Position.suitMask(suit);
+			int k = r == 0 ? 0 : Long.bitCount(remaining
+					& Position.suitMask(suit) & -Long.lowestOneBit(r));
+			kept = (kept << 4) | k;
+		}
+		return kept;
+	}
+
+	/**
+	 * Get the cards kept by the given partition: the top cards of each suit.
+	 */
+	private long top(long kept) {
+		long remaining = pos.remaining();
+		long cards = 0;
+		for (int suit = 0; suit != 4; ++suit) {
+			long m = remaining & Position.suitMask(suit);
+			for (int k = (int) (kept >>> (suit * 4)) & 0xF; k != 0; --k) {
+				long bit = Long.highestOneBit(m);
+				cards |= bit;
+				m &= ~bit;
+			}
+		}
+		return cards;
+	}
+
+	/**
+	 * Record who holds the remaining cards of each suit, for key(): two bits
+	 * per card, highest card in the top bits of 26. The positions at the
+	 * start of each trick have a different number of tricks left, so these
+	 * are kept per trick.
+	 */
+	private void holders(int left) {
+		Position p = pos;
+		long remaining = p.remaining();
+		for (int suit = 0; suit != 4; ++suit) {
+			long word = 0;
+			int n = 0;
+			long m = remaining & Position.suitMask(suit);
+			while (m != 0) {
+				long bit = Long.highestOneBit(m);
+				m ^= bit;
+				word |= (long) holder(bit) << (24 - 2 * n++);
+			}
+			holders[left * 4 + suit] = word;
+		}
+	}
+
+	/**
+	 * Get the table key for the position at the start of the trick with the
+	 * given number of tricks left, under the given partition: the suit
+	 * lengths, leader and salt (in base) with the holder of each card kept by
+	 * the partition.
+	 */
+	private long key(long base, long kept, int left) {
+		// each suit's part is mixed in separately: combining kept with the
+		// base up front let different partitions cancel out to one key
+		long key = base;
+		for (int suit = 0; suit != 4; ++suit) {
+			int k = (int) (kept >>> (suit * 4)) & 0xF;
+			long word = k == 0 ? 0 : holders[left * 4 + suit] >>> (26 - 2 * k);
+			key = mix(key + (word << 8 | suit << 4 | k));
+		}
+		return key;
+	}
+
+	/**
+	 * Get the slot of patternKeys used for the given suit lengths.
+	 */
+	private int slot(long base) {
+		return (int) (base ^ (base >>> 32)) & (patternKeys.length - 1);
+	}
+
+	/**
+	 * Remember that an entry has been stored under the given partition, so
+	 * that later positions with the same suit lengths look it up.
+	 */
+	private void addPattern(long base, long kept) {
+		int i = slot(base);
+		int at = i * PATTERN_WORDS;
+		if (patternKeys[i] != base) {
+			patternKeys[i] = base;
+			for (int j = 0; j != PATTERN_WORDS; ++j) {
+				patternSlots[at + j] = NO_PATTERNS;
+			}
+		}
+		for (int j = 0; j != PATTERN_WORDS * 64; j += 16) {
+			if (((patternSlots[at + j / 64] >>> (j & 63)) & 0xFFFF) == kept) {
+				return;
+			}
+		}
+		// the oldest partition drops off the end
+		for (int j = PATTERN_WORDS - 1; j != 0; --j) {
+			patternSlots[at + j] = (patternSlots[at + j] << 16)
+					| (patternSlots[at + j - 1] >>> 48);
+		}
+		patternSlots[at] = (patternSlots[at] << 16) | kept;
+	}
+
+	private void clearPatterns() {
+		for (int i = 0; i != patternKeys.length; ++i) {
+			patternKeys[i] = 0;
+		}
+		for (int i = 0; i != patternSlots.length; ++i) {
+			patternSlots[i] = NO_PATTERNS;
+		}
+	}
+
+	/**
+	 * Convert a card in the leader's hand into its suit and its place among
+	 * the leader's cards of that suit, counting from the top, for storing in
+	 * the table. This identifies the same card in any position of the same
+	 * partition.
+	 */
+	private int relative(int card) {
+		int suit = card / 13;
+		long above = pos.hand(pos.leader()) & Position.suitMask(suit)
+				& -(2L << card);
+		return suit * 16 + Long.bitCount(above);
+	}
+
+	/**
+	 * Convert a value from relative() back into a card index, or NO_CARD.
+	 */
+	private int absolute(int rel) {
+		if (rel == TranspositionTable.NO_CARD) {
+			return rel;
+		}
+		long m = pos.hand(pos.leader()) & Position.suitMask(rel / 16);
+		for (int i = rel % 16; i != 0 && m != 0; --i) {
+			m &= ~Long.highestOneBit(m);
+		}
+		return m == 0 ? TranspositionTable.NO_CARD
+				: 63 - Long.numberOfLeadingZeros(m);
+	}
+
+	/**
+	 * The output function of the SplitMix64 generator.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
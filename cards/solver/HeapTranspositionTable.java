@@ -0,0 +1,44 @@
+package cards.solver;
+
+/**
+ * A simple single-threaded transposition table held in an array on the
+ * heap. Each key maps to one slot, and a new entry always replaces the old
+ * one. A slot's key and entry sit next to each other, so a probe touches one
+ * cache line.
+ *
+ */
+public final class HeapTranspositionTable implements TranspositionTable {
+	private final long[] slots;	// key, then entry, for each slot
+	private final int mask;
+
+	/**
+	 * Construct a table with the given number of slots, rounded up to a
+	 * power of two.
+	 *
+	 * @param slots
+	 */
+	public HeapTranspositionTable(int slots) {
+		int n = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+		this.slots = new long[2 * n];
+		mask = n - 1;
+		clear();
+	}
+
+	public long probe(long key) {
+		int i = ((int) (key ^ (key >>> 32)) & mask) << 1;
+		return slots[i] == key ? slots[i + 1] : MISS;
+	}
+
+	public void store(long key, int lower, int upper, int depth, int bestCard) {
+		int i = ((int) (key ^ (key >>> 32)) & mask) << 1;
+		slots[i] = key;
+		slots[i + 1] = TranspositionTable.pack(lower, upper, depth, bestCard);
+	}
+
+	public void clear() {
+		for (int i = 0; i != slots.length; i += 2) {
+			slots[i] = 0;
+			slots[i + 1] = MISS;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package cards.solver;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A transposition table held in direct byte buffers outside the Java heap,
+ * so that it can be sized in gigabytes without adding to the work of the
+ * garbage collector. It is split into buffers of at most a gigabyte each,
+ * since a single buffer is limited to 2GB.
+ *
+ * Slots are grouped into buckets of four, filling a 64-byte cache line, and
+ * each key maps to one bucket. A slot holds two longs: the entry (see
+ * TranspositionTable.pack()) with a valid flag, and the key exclusive-or'ed
+ * with the entry. Probing checks that the two still combine to give the key,
+ * so an entry torn by another thread writing the same slot reads as a miss
+ * rather than as a wrong result. Each long is read and written atomically,
+ * so any number of threads may probe and store concurrently without locks.
+ * Only clear() must not run concurrently with other operations.
+ *
+ */
+public final class OffHeapTranspositionTable implements TranspositionTable {
+
+	/**
+	 * Decides which slot of a full bucket a new entry replaces.
+	 *
+	 */
+	public enum ReplacementPolicy {
+		/**
+		 * Replace the entry with the smallest depth, unless it is deeper than
+		 * the new entry, in which case the new entry is not stored. Deep
+		 * entries save the most work, so this keeps them for the whole search.
+		 */
+		DEPTH_PREFERRED,
+		/**
+		 * Always store the new entry, replacing the slot of the bucket chosen
+		 * by its key. This favours recent entries.
+		 */
+		ALWAYS_REPLACE;
+	}
+
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(
+			long[].class, ByteOrder.nativeOrder());
+	private static final int SLOT_BYTES = 16;
+	private static final int BUCKET_SLOTS = 4;
+	private static final int BUCKET_SHIFT = 6;	// 64 bytes to a bucket
+	private static final int CHUNK_SHIFT = 30;	// at most 1GB to a buffer
+	private static final long VALID = 1L << 32;
+	private static final long FIELDS = 0xFFFFFFFFL;
+
+	private final ByteBuffer[] chunks;
+	private final long buckets;
+	private final int chunkBuckets;	// log2 of buckets per chunk
+	private final ReplacementPolicy policy;
+
+	/**
+	 * Construct a table of about the given size in bytes, rounded down to a
+	 * power of two (but at least one bucket), using the depth-preferred
+	 * replacement policy.
+	 *
+	 * @param bytes
+	 */
+	public OffHeapTranspositionTable(long bytes) {
+		this(bytes, ReplacementPolicy.DEPTH_PREFERRED);
+	}
+
+	/**
+	 * Construct a table of about the given size in bytes, rounded down to a
+	 * power of two (but at least one bucket), using the given replacement
+	 * policy.
+	 *
+	 * @param bytes
+	 * @param policy
+	 */
+	public OffHeapTranspositionTable(long bytes, ReplacementPolicy policy) {
+		if (policy == null) {
+			throw new IllegalArgumentException("Replacement policy must not be null");
+		}
+		long size = Long.highestOneBit(Math.max(bytes, 1L << BUCKET_SHIFT));
+		this.policy = policy;
+		this.buckets = size >>> BUCKET_SHIFT;
+		int chunkShift = Math.min(CHUNK_SHIFT, Long.numberOfTrailingZeros(size));
+		this.chunkBuckets = chunkShift - BUCKET_SHIFT;
+		this.chunks = new ByteBuffer[(int) (size >>> chunkShift)];
+		for (int i = 0; i != chunks.length; ++i) {
+			// direct buffers are zeroed, which marks every slot as empty
+			chunks[i] = ByteBuffer.allocateDirect(1 << chunkShift)
+					.order(ByteOrder.nativeOrder());
+		}
+	}
+
+	/**
+	 * Get the size of this table in bytes.
+	 *
+	 * @return
+	 */
+	public long sizeInBytes() {
+		return buckets << BUCKET_SHIFT;
+	}
+
+	/**
+	 * Get the number of entries this table can hold.
+	 *
+	 * @return
+	 */
+	public long capacity() {
+		return buckets * BUCKET_SLOTS;
+	}
+
+	/**
+	 * Get the replacement policy of this table.
+	 *
+	 * @return
+	 */
+	public ReplacementPolicy getPolicy() {
+		return policy;
+	}
+
+	public long probe(long key) {
+		long bucket = key & (buckets - 1);
+		ByteBuffer chunk = chunks[(int) (bucket >>> chunkBuckets)];
+		int at = offset(bucket);
+		for (int i = 0; i != BUCKET_SLOTS; ++i, at += SLOT_BYTES) {
+			long data = (long) LONGS.getOpaque(chunk, at);
+			if ((data & VALID) != 0
+					&& ((long) LONGS.getOpaque(chunk, at + 8) ^ data) == key) {
+				return data & FIELDS;
+			}
+		}
+		return MISS;
+	}
+
+	public void store(long key, int lower, int upper, int depth, int bestCard) {
+		long bucket = key & (buckets - 1);
+		ByteBuffer chunk = chunks[(int) (bucket >>> chunkBuckets)];
+		int start = offset(bucket);
+		int victim = -1;
+		int shallowest = Integer.MAX_VALUE;
+		boolean full = true;
+		for (int i = 0, at = start; i != BUCKET_SLOTS; ++i, at += SLOT_BYTES) {
+			long data = (long) LONGS.getOpaque(chunk, at);
+			if ((data & VALID) == 0
+					|| ((long) LONGS.getOpaque(chunk, at + 8) ^ data) == key) {
+				// an empty slot, or the old entry for this key
+				victim = at;
+				full = false;
+				break;
+			}
+			int d = TranspositionTable.depth(data);
+			if (d < shallowest) {
+				shallowest = d;
+				victim = at;
+			}
+		}
+		if (full) {
+			if (policy == ReplacementPolicy.ALWAYS_REPLACE) {
+				victim = start + (int) (key >>> 62) * SLOT_BYTES;
+			} else if (shallowest > depth) {
+				return;
+			}
+		}
+		long data = TranspositionTable.pack(lower, upper, depth, bestCard) | VALID;
+		LONGS.setOpaque(chunk, victim, data);
+		LONGS.setOpaque(chunk, victim + 8, key ^ data);
+	}
+
+	public void clear() {
+		for (ByteBuffer chunk : chunks) {
+			for (int at = 0; at != chunk.capacity(); at += 8) {
+				LONGS.set(chunk, at, 0L);
+			}
+		}
+		VarHandle.fullFence();
+	}
+
+	/**
+	 * Get the byte offset of the given bucket within its buffer.
+	 *
+	 * @param bucket
+	 * @return
+	 */
+	private int offset(long bucket) {
+		return (int) (bucket & ((1L << chunkBuckets) - 1)) << BUCKET_SHIFT;
+	}
+}
@@ -0,0 +1,435 @@
+package cards.solver;
+
+import cards.core.*;
+
+/**
+ * A compact, mutable position used for searching: the four hands as card
+ * masks, the current trick, the suit of trumps and the tricks taken by each
+ * seat since the position was created. Seats and suits are held as ordinals,
+ * and cards as indices (see Card.index()).
+ *
+ * Cards are played with play() and taken back with undo(), which also
+ * complete and reinstate tricks, so a search can walk the game tree in place
+ * without allocating.
+ *
+ */
+public final class Position {
+	/**
+	 * Suit value used for no trumps.
+	 */
+	public static final int NO_TRUMPS = -1;
+	private static final Player.Direction[] SEATS = Player.Direction.values();
+	private static final Card.Suit[] SUITS = Card.Suit.values();
+
+	private final long[] hands = new long[4];
+	private final int[] tricks = new int[4];
+	private int trumps = NO_TRUMPS;
+	private int leader;
+	private int count;
+	private int winner;	// seat currently winning the trick
+	private int winCard;	// card currently winning the trick
+	private long hash;	// Zobrist hash of the hands
+
+	// every card played in order, the current trick being the last count;
+	// cards before floor were played before the history began
+	private final int[] played = new int[56];
+	private int playedCount;
+	private int floor;
+	private final int[] leaders = new int[14];
+	private int leaderCount;
+
+	/**
+	 * Construct an empty position, with no cards and North to lead.
+	 */
+	public Position() {
+	}
+
+	/**
+	 * Construct a position from the given hands, trumps and leader, with an
+	 * empty trick.
+	 *
+	 * @param hands
+	 *            --- card mask for each seat.
+	 * @param trumps
+	 *            --- suit ordinal, or NO_TRUMPS.
+	 * @param leader
+	 *            --- seat ordinal of the player to lead.
+	 */
+	public Position(long[] hands, int trumps, int leader) {
+		set(hands, trumps, leader);
+	}
+
+	/**
+	 * Construct a copy of the given position. The history is not copied, so
+	 * the copy cannot be undone past its current state.
+	 *
+	 * @param other
+	 */
+	public Position(Position other) {
+		copyFrom(other);
+	}
+
+	/**
+	 * Construct a position from the current state of a game: its hands, its
+	 * current trick and the trumps of that trick.
+	 *
+	 * @param game
+	 * @return
+	 */
+	public static Position of(CardGame game) {
+		Position p = new Position();
+		Trick t = game.getTrick();
+		long[] hands = new long[4];
+		for (Player.Direction d : Player.Direction.values()) {
+			hands[d.ordinal()] = game.getPlayer(d).getHand().mask();
+		}
+		Card.Suit trumps = t == null ? null : t.getTrumps();
+		int leader = t == null ? 0 : t.getLeadPlayer().ordinal();
+		int[] trick = new int[4];
+		int size = 0;
+		if (t != null && t.size() == 4) {
+			// the trick is over, so its winner leads an empty one
+			leader = t.getWinner().ordinal();
+		} else if (t != null) {
+			for (; size != t.size(); ++size) {
+				trick[size] = t.getCard(size).index();
+			}
+		}
+		p.set(hands, trumps == null ? NO_TRUMPS : trumps.ordinal(), leader,
+				trick, size);
+		return p;
+	}
+
+	/**
+	 * Reset this position to the given hands, trumps and leader, with an
+	 * empty trick and no history.
+	 *
+	 * @param hands
+	 * @param trumps
+	 * @param leader
+	 */
+	public void set(long[] hands, int trumps, int leader) {
+		hash = 0;
+		for (int i = 0; i != 4; ++i) {
+			this.hands[i] = hands[i];
+			this.tricks[i] = 0;
+			hash ^= Zobrist.hand(SEATS[i], hands[i]);
+		}
+		this.trumps = trumps;
+		this.leader = leader;
+		this.count = 0;
+		this.playedCount = 0;
+		this.floor = 0;
+		this.leaderCount = 0;
+	}
+
+	/**
+	 * Reset this position to the given hands, trumps and leader, with the
+	 * given cards already played to the current trick and no history. The
+	 * cards played must no longer be in the hands, and there must be fewer
+	 * than four of them.
+	 *
+	 * @param hands
+	 * @param trumps
+	 * @param leader
+	 * @param trick
+	 *            --- card index played at each position of the trick.
+	 * @param size
+	 *            --- number of cards played to the trick.
+	 */
+	public void set(long[] hands, int trumps, int leader, int[] trick, int size) {
+		set(hands, trumps, leader);
+		for (int i = 0; i != size; ++i) {
+			record(trick[i]);
+		}
+		floor = playedCount;
+	}
+
+	/**
+	 * Make this position a copy of another. The history is not copied.
+	 *
+	 * @param other
+	 */
+	public void copyFrom(Position other) {
+		System.arraycopy(other.hands, 0, hands, 0, 4);
+		System.arraycopy(other.tricks, 0, tricks, 0, 4);
+		trumps = other.trumps;
+		leader = other.leader;
+		count = other.count;
+		winner = other.winner;
+		winCard = other.winCard;
+		hash = other.hash;
+		System.arraycopy(other.played, other.playedCount - count, played, 0,
+				count);
+		playedCount = count;
+		floor = count;
+		leaderCount = 0;
+	}
+
+	// ========================================================
+	// Accessors
+	// ========================================================
+
+	/**
+	 * Get the hand of the given seat as a card mask.
+	 *
+	 * @param seat
+	 * @return
+	 */
+	public long hand(int seat) {
+		return hands[seat];
+	}
+
+	/**
+	 * Get the cards still held by any seat.
+	 *
+	 * @return
+	 */
+	public long remaining() {
+		return hands[0] | hands[1] | hands[2] | hands[3];
+	}
+
+	/**
+	 * Get the suit of trumps as an ordinal, or NO_TRUMPS.
+	 *
+	 * @return
+	 */
+	public int trumps() {
+		return trumps;
+	}
+
+	/**
+	 * Get the seat which led the current trick.
+	 *
+	 * @return
+	 */
+	public int leader() {
+		return leader;
+	}
+
+	/**
+	 * Get the number of cards played to the current trick.
+	 *
+	 * @return
+	 */
+	public int trickSize() {
+		return count;
+	}
+
+	/**
+	 * Get the card index played at the given position of the current trick.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public int trickCard(int i) {
+		return played[playedCount - count + i];
+	}
+
+	/**
+	 * Get the cards played to the current trick as a mask.
+	 *
+	 * @return
+	 */
+	public long trickMask() {
+		long m = 0;
+		for (int i = playedCount - count; i != playedCount; ++i) {
+			m |= 1L << played[i];
+		}
+		return m;
+	}
+
+	/**
+	 * Get the seat currently winning the trick (only meaningful if a card
+	 * has been played).
+	 *
+	 * @return
+	 */
+	public int winner() {
+		return winner;
+	}
+
+	/**
+	 * Get the card currently winning the trick (only meaningful if a card
+	 * has been played).
+	 *
+	 * @return
+	 */
+	public int winningCard() {
+		return winCard;
+	}
+
+	/**
+	 * Get the suit led to the current trick, or -1 if no card has been
+	 * played.
+	 *
+	 * @return
+	 */
+	public int leadSuit() {
+		return count == 0 ? -1 : played[playedCount - count] / 13;
+	}
+
+	/**
+	 * Get the seat to play next.
+	 *
+	 * @return
+	 */
+	public int toPlay() {
+		return (leader + count) & 3;
+	}
+
+	/**
+	 * Get the number of tricks the given seat has taken since this position
+	 * was created.
+	 *
+	 * @param seat
+	 * @return
+	 */
+	public int tricks(int seat) {
+		return tricks[seat];
+	}
+
+	/**
+	 * Get the number of tricks left to play, including the current one.
+	 *
+	 * @return
+	 */
+	public int tricksLeft() {
+		return (Long.bitCount(remaining()) + count + 3) / 4;
+	}
+
+	/**
+	 * Get the Zobrist hash of the hands (see Zobrist).
+	 *
+	 * @return
+	 */
+	public long handsHash() {
+		return hash;
+	}
+
+	/**
+	 * Get the Zobrist hash of the whole position: the hands, the cards in
+	 * the current trick, its leader and the suit of trumps. This matches
+	 * CardGame.positionHash() for a position taken from a game.
+	 *
+	 * @return
+	 */
+	public long positionHash() {
+		long h = hash ^ Zobrist.lead(SEATS[leader])
+				^ Zobrist.trumps(trumps == NO_TRUMPS ? null : SUITS[trumps]);
+		for (int i = 0; i != count; ++i) {
+			h ^= Zobrist.trick(i, played[playedCount - count + i]);
+		}
+		return h;
+	}
+
+	/**
+	 * Get the cards the seat to play may legally play.
+	 *
+	 * @return
+	 */
+	public long legalMoves() {
+		long hand = hands[(leader + count) & 3];
+		if (count != 0) {
+			long follow = hand & suitMask(played[playedCount - count] / 13);
+			if (follow != 0) {
+				return follow;
+			}
+		}
+		return hand;
+	}
+
+	/**
+	 * Check whether the given card would beat the card currently winning the
+	 * trick.
+	 *
+	 * @param card
+	 * @return
+	 */
+	public boolean beats(int card) {
+		if (count == 0) {
+			return true;
+		}
+		int suit = card / 13;
+		int wsuit = winCard / 13;
+		if (suit == wsuit) {
+			return card > winCard;
+		}
+		return suit == trumps;
+	}
+
+	// ========================================================
+	// Moves
+	// ========================================================
+
+	/**
+	 * The seat to play plays the given card, which must be legal. If this
+	 * completes the trick, it is credited to its winner, who leads the next.
+	 *
+	 * @param card
+	 */
+	public void play(int card) {
+		int seat = (leader + count) & 3;
+		hands[seat] &= ~(1L << card);
+		hash ^= Zobrist.hand(SEATS[seat], card);
+		record(card);
+		if (count == 4) {
+			tricks[winner]++;
+			leaders[leaderCount++] = leader;
+			leader = winner;
+			count = 0;
+		}
+	}
+
+	/**
+	 * Take back the last card played with play().
+	 */
+	public void undo() {
+		if (playedCount == floor) {
+			throw new IllegalStateException("No move to undo");
+		}
+		int card = played[--playedCount];
+		if (count == 0) {
+			// the card completed a trick
+			tricks[leader]--;
+			leader = leaders[--leaderCount];
+			count = 4;
+		}
+		count--;
+		int seat = (leader + count) & 3;
+		hands[seat] |= 1L << card;
+		hash ^= Zobrist.hand(SEATS[seat], card);
+		// replay the rest of the trick to find who is now winning
+		int n = count;
+		playedCount -= n;
+		count = 0;
+		for (int i = 0; i != n; ++i) {
+			record(played[playedCount]);
+		}
+	}
+
+	/**
+	 * Append a card to the current trick, updating the winner.
+	 *
+	 * @param card
+	 */
+	private void record(int card) {
+		int seat = (leader + count) & 3;
+		if (count == 0 || beats(card)) {
+			winner = seat;
+			winCard = card;
+		}
+		played[playedCount++] = card;
+		count++;
+	}
+
+	/**
+	 * Get the mask covering every card of the given suit ordinal.
+	 *
+	 * @param suit
+	 * @return
+	 */
+	public static long suitMask(int suit) {
+		return 0x1FFFL << (suit * 13);
+	}
+}
@@ -0,0 +1,347 @@
+package cards.solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A precomputed table of the exact number of tricks each side takes in
+ * every endgame with at most a few cards per hand, read from a file which is
+ * memory-mapped rather than loaded (see TablebaseGenerator for how the file
+ * is made).
+ *
+ * Positions are stored at the start of a trick, when every hand holds the
+ * same number of cards. Only the order of the cards still held matters, and
+ * seats are counted round from the leader, so each position is stored in a
+ * canonical form: the suit of trumps (if any) first and the other suits in
+ * order, each described by who holds its cards from the top down. This is
+ * the same for every suit of trumps, so there are just two tables for each
+ * hand size: one with trumps and one without. A position is indexed by its
+ * suit lengths and then by the rank of its sequence of holders among all
+ * sequences with the same number of cards in each hand.
+ *
+ * Each entry is a char holding, in three bits each, the tricks the leader
+ * and each following seat can take playing alone against the other three,
+ * and then the tricks the leader and partner take playing together. So
+ * single seats, partnerships and their opponents can all be looked up. A
+ * position part way through a trick is looked up by playing out the trick.
+ *
+ * A tablebase is immutable once opened, and may be shared between threads.
+ *
+ */
+public final class Tablebase {
+	static final int MAGIC = 0x57544231;	// "WTB1"
+	static final int HEADER_BYTES = 16;
+	private static final long[] FACTORIAL = new long[21];
+
+	static {
+		FACTORIAL[0] = 1;
+		for (int i = 1; i != FACTORIAL.length; ++i) {
+			FACTORIAL[i] = FACTORIAL[i - 1] * i;
+		}
+	}
+
+	private final int maxCards;
+	private final CharBuffer[][] sections;	// [trumps ? 1 : 0][cards per hand]
+	private final int[][] compositions;	// see composition()
+
+	/**
+	 * Construct a tablebase over the given sections, which are indexed by
+	 * whether there are trumps and then by the number of cards per hand.
+	 *
+	 * @param maxCards
+	 * @param sections
+	 */
+	Tablebase(int maxCards, CharBuffer[][] sections) {
+		this.maxCards = maxCards;
+		this.sections = sections;
+		this.compositions = new int[maxCards + 1][];
+		for (int k = 1; k <= maxCards; ++k) {
+			compositions[k] = compositions(k);
+		}
+	}
+
+	/**
+	 * Open the tablebase in the given file, mapping it into memory.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             if the file cannot be read or is not a tablebase.
+	 */
+	public static Tablebase open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					HEADER_BYTES);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a tablebase");
+			}
+			int maxCards = header.getInt(4);
+			if (channel.size() != fileSize(maxCards)) {
+				throw new IOException(file + " is truncated");
+			}
+			CharBuffer[][] sections = new CharBuffer[2][maxCards + 1];
+			long offset = HEADER_BYTES;
+			for (int t = 0; t != 2; ++t) {
+				for (int k = 1; k <= maxCards; ++k) {
+					long bytes = size(k) * 2;
+					sections[t][k] = channel.map(FileChannel.MapMode.READ_ONLY,
+							offset, bytes).asCharBuffer();
+					offset += bytes;
+				}
+			}
+			// the mappings stay valid once the channel is closed
+			return new Tablebase(maxCards, sections);
+		}
+	}
+
+	/**
+	 * Get the largest number of cards per hand covered.
+	 *
+	 * @return
+	 */
+	public int getMaxCards() {
+		return maxCards;
+	}
+
+	/**
+	 * Check whether the given position is covered: whether every hand holds
+	 * at most getMaxCards() cards once the current trick is over.
+	 *
+	 * @param position
+	 * @return
+	 */
+	public boolean covers(Position position) {
+		return position.tricksLeft() <= maxCards;
+	}
+
+	/**
+	 * Check whether tricks can be looked up for the given side: no seats,
+	 * one seat, a partnership, three seats or all four.
+	 *
+	 * @param sideMask
+	 * @return
+	 */
+	public static boolean supports(int sideMask) {
+		int n = Integer.bitCount(sideMask & 0xF);
+		return n != 2 || sideMask == DoubleDummySolver.NORTH_SOUTH
+				|| sideMask == DoubleDummySolver.EAST_WEST;
+	}
+
+	/**
+	 * Get the number of the remaining tricks, including the current one,
+	 * which the given side takes with best play from the given position, or
+	 * -1 if the position is not covered or the side is not supported. The
+	 * position is left unchanged.
+	 *
+	 * @param position
+	 * @param sideMask
+	 * @return
+	 */
+	public int tricks(Position position, int sideMask) {
+		if (!covers(position) || !supports(sideMask)) {
+			return -1;
+		}
+		if (position.trickSize() == 0) {
+			return lookup(position, sideMask);
+		}
+		return playTrick(position, sideMask);
+	}
+
+	// ========================================================
+	// Lookup
+	// ========================================================
+
+	/**
+	 * Play out the current trick with best play for the given side, looking
+	 * up the position at the start of the next trick, and return the tricks
+	 * the side takes.
+	 *
+	 * @param p
+	 * @param side
+	 * @return
+	 */
+	int playTrick(Position p, int side) {
+		long moves = Canonicalizer.representatives(p.legalMoves(),
+				p.remaining() | p.trickMask());
+		boolean maximising = ((side >>> p.toPlay()) & 1) != 0;
+		int best = maximising ? -1 : Integer.MAX_VALUE;
+		for (long m = moves; m != 0; m &= m - 1) {
+			p.play(Long.numberOfTrailingZeros(m));
+			int v;
+			if (p.trickSize() == 0) {
+				// the winner of the trick leads the next
+				v = ((side >>> p.leader()) & 1) + lookup(p, side);
+			} else {
+				v = playTrick(p, side);
+			}
+			p.undo();
+			best = maximising ? Math.max(best, v) : Math.min(best, v);
+		}
+		return best;
+	}
+
+	/**
+	 * Look up the tricks the given side takes from a covered position at the
+	 * start of a trick.
+	 */
+	private int lookup(Position p, int side) {
+		int k = Long.bitCount(p.hand(p.leader()));
+		if (k == 0) {
+			return 0;
+		}
+		int t = p.trumps() == Position.NO_TRUMPS ? 0 : 1;
+		long i = index(p, k);
+		return value(sections[t][k].get((int) i), p.leader(), side, k);
+	}
+
+	/**
+	 * Get the tricks the given side takes from a table entry for a position
+	 * with the given leader and number of tricks left.
+	 */
+	static int value(int entry, int leader, int side, int k) {
+		// count seats round from the leader
+		int rel = ((side >>> leader) | (side << (4 - leader))) & 0xF;
+		switch (Integer.bitCount(rel)) {
+		case 0:
+			return 0;
+		case 1:
+			return field(entry, Integer.numberOfTrailingZeros(rel));
+		case 3:
+			return k - field(entry, Integer.numberOfTrailingZeros(~rel & 0xF));
+		case 4:
+			return k;
+		}
+		return rel == 0x5 ? field(entry, 4) : k - field(entry, 4);
+	}
+
+	/**
+	 * Pack the fields of an entry: the tricks taken by each seat alone,
+	 * counting round from the leader, then by the leader's partnership.
+	 */
+	static char pack(int[] fields) {
+		int e = 0;
+		for (int i = 0; i != 5; ++i) {
+			e |= fields[i] << (3 * i);
+		}
+		return (char) e;
+	}
+
+	private static int field(int entry, int i) {
+		return (entry >>> (3 * i)) & 7;
+	}
+
+	// ========================================================
+	// Indexing
+	// ========================================================
+
+	/**
+	 * Get the number of positions in the table for the given number of cards
+	 * per hand.
+	 *
+	 * @param k
+	 * @return
+	 */
+	static long size(int k) {
+		int n = 0;
+		int[] c = compositions(k);
+		for (int i = 0; i != c.length; ++i) {
+			if (c[i] >= 0) {
+				n++;
+			}
+		}
+		return n * sequences(k);
+	}
+
+	/**
+	 * Get the size of a tablebase file covering up to the given number of
+	 * cards per hand.
+	 *
+	 * @param maxCards
+	 * @return
+	 */
+	static long fileSize(int maxCards) {
+		long bytes = HEADER_BYTES;
+		for (int k = 1; k <= maxCards; ++k) {
+			bytes += 4 * size(k);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the number of ways of dealing 4k cards in a fixed order into four
+	 * hands of k cards.
+	 */
+	static long sequences(int k) {
+		long f = FACTORIAL[k];
+		return FACTORIAL[4 * k] / (f * f * f * f);
+	}
+
+	/**
+	 * Number the ways of splitting 4k cards into four suits of at most 13.
+	 * The index of the lengths (a, b, c, 4k - a - b - c) is held at
+	 * (a * B + b) * B + c, where B = 4k + 1, or -1 if they are not possible.
+	 */
+	static int[] compositions(int k) {
+		int n = 4 * k;
+		int b = n + 1;
+		int[] index = new int[b * b * b];
+		int next = 0;
+		for (int i = 0; i != index.length; ++i) {
+			int x = i / (b * b);
+			int y = i / b % b;
+			int z = i % b;
+			int w = n - x - y - z;
+			boolean ok = w >= 0 && x <= 13 && y <= 13 && z <= 13 && w <= 13;
+			index[i] = ok ? next++ : -1;
+		}
+		return index;
+	}
+
+	/**
+	 * Get the index of a position at the start of a trick with k cards in
+	 * each hand.
+	 */
+	long index(Position p, int k) {
+		int leader = p.leader();
+		int trumps = p.trumps();
+		long remaining = p.remaining();
+		int b = 4 * k + 1;
+		int lengths = 0;
+		// counts of each seat's cards still to place, five bits each, and
+		// the number of distinct orders of those cards
+		int counts = k | k << 5 | k << 10 | k << 15;
+		int left = 4 * k;
+		long orders = sequences(k);
+		long rank = 0;
+		for (int i = 0; i != 4; ++i) {
+			int suit = trumps == Position.NO_TRUMPS ? i
+					: i == 0 ? trumps : i <= trumps ? i - 1 : i;
+			long m = remaining & Position.suitMask(suit);
+			if (i != 3) {
+				lengths = lengths * b + Long.bitCount(m);
+			}
+			while (m != 0) {
+				long bit = Long.highestOneBit(m);
+				m ^= bit;
+				int seat = 0;
+				while ((p.hand(seat) & bit) == 0) {
+					seat++;
+				}
+				int x = (seat - leader) & 3;
+				// count the sequences which put a lower seat here: seat s
+				// comes first in the fraction counts[s] / left of the orders
+				for (int s = 0; s != x; ++s) {
+					rank += orders * ((counts >>> (5 * s)) & 31) / left;
+				}
+				orders = orders * ((counts >>> (5 * x)) & 31) / left;
+				counts -= 1 << (5 * x);
+				left--;
+			}
+		}
+		return compositions[k][lengths] * sequences(k) + rank;
+	}
+}
@@ -0,0 +1,168 @@
+package cards.solver;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a tablebase file (see Tablebase) offline. Tables are built in
+ * order of hand size, each by playing out the first trick of every position
+ * and looking up the positions which follow in the table before, so nothing
+ * is searched more than one trick deep. The file is written through a
+ * memory mapping, and positions with different suit lengths are built in
+ * parallel.
+ *
+ * The tables grow very quickly: up to 2 cards per hand takes under 2MB, up
+ * to 3 cards about 670MB, and 4 cards per hand would need some 6 * 10^10
+ * positions per table, so is rejected.
+ *
+ * Usage: <code>java cards.solver.TablebaseGenerator file maxCards</code>
+ *
+ */
+public final class TablebaseGenerator {
+
+	private TablebaseGenerator() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: java cards.solver.TablebaseGenerator file maxCards");
+			System.exit(1);
+		}
+		long start = System.currentTimeMillis();
+		generate(Paths.get(args[0]), Integer.parseInt(args[1]));
+		System.out.println("Generated " + args[0] + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Generate a tablebase covering up to the given number of cards per hand,
+	 * and write it to the given file.
+	 *
+	 * @param file
+	 * @param maxCards
+	 * @throws IOException
+	 */
+	public static void generate(Path file, int maxCards) throws IOException {
+		if (maxCards < 1 || maxCards > 7) {
+			throw new IllegalArgumentException("Cards per hand must be between 1 and 7");
+		}
+		for (int k = 1; k <= maxCards; ++k) {
+			if (Tablebase.size(k) * 2 > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Tables for " + k
+						+ " cards per hand are too large to map");
+			}
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			MappedByteBuffer[] maps = new MappedByteBuffer[2 * maxCards];
+			CharBuffer[][] sections = new CharBuffer[2][maxCards + 1];
+			long offset = Tablebase.HEADER_BYTES;
+			for (int t = 0; t != 2; ++t) {
+				for (int k = 1; k <= maxCards; ++k) {
+					long bytes = Tablebase.size(k) * 2;
+					MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE,
+							offset, bytes);
+					maps[t * maxCards + k - 1] = map;
+					sections[t][k] = map.asCharBuffer();
+					offset += bytes;
+				}
+			}
+			Tablebase table = new Tablebase(maxCards, sections);
+			for (int k = 1; k <= maxCards; ++k) {
+				for (int t = 0; t != 2; ++t) {
+					fill(table, sections[t][k], k, t == 0 ? Position.NO_TRUMPS : 0);
+				}
+			}
+			for (MappedByteBuffer map : maps) {
+				map.force();
+			}
+			// the header goes in last, so a partly written file is not valid
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+					Tablebase.HEADER_BYTES);
+			header.putInt(0, Tablebase.MAGIC);
+			header.putInt(4, maxCards);
+			header.force();
+		}
+	}
+
+	/**
+	 * Fill in the table for k cards per hand, with the tables for fewer cards
+	 * already filled in.
+	 */
+	private static void fill(Tablebase table, CharBuffer section, int k, int trumps) {
+		int[] index = Tablebase.compositions(k);
+		IntStream.range(0, index.length).parallel().filter(i -> index[i] >= 0)
+				.forEach(i -> fill(table, section, k, trumps, i, index[i]));
+	}
+
+	/**
+	 * Fill in the entries for one set of suit lengths, given by its place in
+	 * the array from Tablebase.compositions(), walking the sequences of
+	 * holders in order.
+	 */
+	private static void fill(Tablebase table, CharBuffer section, int k,
+			int trumps, int lengths, int composition) {
+		int b = 4 * k + 1;
+		int[] suitLengths = { lengths / (b * b), lengths / b % b, lengths % b, 0 };
+		suitLengths[3] = 4 * k - suitLengths[0] - suitLengths[1] - suitLengths[2];
+		int[] sequence = new int[4 * k];
+		for (int i = 0; i != sequence.length; ++i) {
+			sequence[i] = i / k;
+		}
+		long[] hands = new long[4];
+		int[] fields = new int[5];
+		Position p = new Position();
+		long at = composition * Tablebase.sequences(k);
+		do {
+			for (int s = 0; s != 4; ++s) {
+				hands[s] = 0;
+			}
+			int i = 0;
+			for (int suit = 0; suit != 4; ++suit) {
+				for (int r = 0; r != suitLengths[suit]; ++r) {
+					hands[sequence[i++]] |= 1L << (suit * 13 + 12 - r);
+				}
+			}
+			p.set(hands, trumps, 0);
+			for (int s = 0; s != 4; ++s) {
+				fields[s] = table.playTrick(p, 1 << s);
+			}
+			fields[4] = table.playTrick(p, DoubleDummySolver.NORTH_SOUTH);
+			section.put((int) at++, Tablebase.pack(fields));
+		} while (nextSequence(sequence));
+	}
+
+	/**
+	 * Step to the next sequence in lexicographic order, returning false if
+	 * this was the last.
+	 */
+	private static boolean nextSequence(int[] a) {
+		int i = a.length - 2;
+		while (i >= 0 && a[i] >= a[i + 1]) {
+			i--;
+		}
+		if (i < 0) {
+			return false;
+		}
+		int j = a.length - 1;
+		while (a[j] <= a[i]) {
+			j--;
+		}
+		int t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+		for (int l = i + 1, r = a.length - 1; l < r; ++l, --r) {
+			t = a[l];
+			a[l] = a[r];
+			a[r] = t;
+		}
+		return true;
+	}
+}
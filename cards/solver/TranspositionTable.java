@@ -0,0 +1,77 @@
+package cards.solver;
+
+/**
+ * A fixed-size cache of search results, keyed by a 64-bit position hash.
+ * Each entry records a lower and an upper bound on the value of the
+ * position (equal if the value is exact), the depth (e.g. tricks remaining)
+ * it was searched to, and the best card found. Entries are packed into a
+ * single long, which can be taken apart with the static helpers below.
+ *
+ */
+public interface TranspositionTable {
+	/**
+	 * Returned by probe() when there is no entry for the key.
+	 */
+	public static final long MISS = -1L;
+	/**
+	 * Best card value used when there is no best card.
+	 */
+	public static final int NO_CARD = 0xFF;
+
+	/**
+	 * Look up the entry for the given key.
+	 *
+	 * @param key
+	 * @return the packed entry, or MISS.
+	 */
+	public long probe(long key);
+
+	/**
+	 * Record an entry for the given key. The table may decline to store it,
+	 * or may evict another entry to make room.
+	 *
+	 * @param key
+	 * @param lower
+	 *            --- lower bound on the value, between 0 and 255.
+	 * @param upper
+	 *            --- upper bound on the value, between 0 and 255.
+	 * @param depth
+	 *            --- between 0 and 255.
+	 * @param bestCard
+	 *            --- card index, or NO_CARD.
+	 */
+	public void store(long key, int lower, int upper, int depth, int bestCard);
+
+	/**
+	 * Remove every entry.
+	 */
+	public void clear();
+
+	// ========================================================
+	// Entry packing
+	// ========================================================
+
+	/**
+	 * Pack the fields of an entry into the low 32 bits of a long.
+	 */
+	public static long pack(int lower, int upper, int depth, int bestCard) {
+		return (lower & 0xFF) | ((upper & 0xFF) << 8) | ((depth & 0xFF) << 16)
+				| ((long) (bestCard & 0xFF) << 24);
+	}
+
+	public static int lower(long entry) {
+		return (int) entry & 0xFF;
+	}
+
+	public static int upper(long entry) {
+		return (int) (entry >>> 8) & 0xFF;
+	}
+
+	public static int depth(long entry) {
+		return (int) (entry >>> 16) & 0xFF;
+	}
+
+	public static int bestCard(long entry) {
+		return (int) (entry >>> 24) & 0xFF;
+	}
+}
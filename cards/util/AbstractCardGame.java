@@ -27,22 +27,23 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 	private static final long serialVersionUID = -5120875518041967129L;
 
 	/**
-	 * A map of positions around the table to the players in the game.
+	 * The players in the game, indexed by the ordinal of their position around
+	 * the table.
 	 */
-	protected final Map<Player.Direction, Player> players = new HashMap<Player.Direction,Player>();
+	protected final Player[] players = new Player[4];
 	
 	/**
 	 * Keeps track of the number of tricks each player has won in the current
-	 * round.
+	 * round, indexed by direction ordinal.
 	 */
-	protected final Map<Player.Direction,Integer> tricks = new HashMap<Player.Direction,Integer>();
+	protected final int[] tricks = new int[4];
 	
 	/**
-	 * Keeps track of the player scores. In some games, this may equal the number
-	 * of tricks. In others, this may include certain bonuses that were
-	 * obtained.
+	 * Keeps track of the player scores, indexed by direction ordinal. In some
+	 * games, this may equal the number of tricks. In others, this may include
+	 * certain bonuses that were obtained.
 	 */
-	protected final Map<Player.Direction,Integer> scores = new HashMap<Player.Direction,Integer>();
+	protected final int[] scores = new int[4];
 
 	/**
 	 * Keep track of which suit is currently trumps. Here, "null" may be used to
@@ -55,28 +56,106 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 	 */
 	protected Trick currentTrick;	
 	
+	/**
+	 * The cards played so far this hand, and the voids they have shown.
+	 */
+	protected final CardTracker tracker = new CardTracker();
+	
+	/**
+	 * Moves made with makeMove() which can still be undone. Each entry holds
+	 * the card index in bits 0-5, the player in bits 6-7, the MOVE_COMPLETED
+	 * flag if the move finished a trick, and the MOVE_VOID flag if it showed
+	 * the player to be void in the suit led.
+	 */
+	private transient int[] moves;
+	private transient int moveCount;
+	private static final int MOVE_COMPLETED = 1 << 8;
+	private static final int MOVE_VOID = 1 << 9;
+	
+	/**
+	 * Tricks completed by makeMove(), most recent last, so that they can be
+	 * reinstated by unmakeMove().
+	 */
+	private transient Trick[] completed;
+	private transient int completedCount;
+	
+	/**
+	 * Tricks started by makeMove(), indexed by the number of completed tricks
+	 * at the time. These are reused, so searching allocates nothing once the
+	 * pool is warm.
+	 */
+	private transient Trick[] started;
+	
 	public AbstractCardGame() {
 		for(Player.Direction d : Player.Direction.values()) {
-			players.put(d, new Player(d));
-			tricks.put(d, 0);
-			scores.put(d, 0);
+			players[d.ordinal()] = new Player(d);
 		}
 	}
+	
+	/**
+	 * Return this game to the state it was in when constructed, so that the
+	 * same object can be used to play another game. Variations with
+	 * additional state should override this and reset that state as well.
+	 */
+	public void reset() {
+		for (Player pl : players) {
+			pl.getHand().clear();
+		}
+		resetTricksWon();
+		resetOverallScores();
+		trumps = Card.Suit.HEARTS;
+		currentTrick = null;
+		tracker.clear();
+		clearMoves();
+	}
 
 	// ========================================================
 	// Methods required for Cloneable
 	// ========================================================
 	
 	public CardGame clone() {
-		// This clone method used the default clone method found in
-		// java.lang.Object. This creates a shallow copy of the card game. For
-		// Part 3 of the assignment, you need to reimplement this to perform a
-		// deep clone.
-		try {
-			return (CardGame) deepClone(this);
-		} catch(Exception e) {
-			return null; // dead code
+		// Variations which support it are copied structurally, which avoids
+		// pushing the whole game through serialization. Otherwise, fall back
+		// on a serialization-based deep clone.
+		AbstractCardGame copy = newInstance();
+		if (copy != null) {
+			copyInto(copy);
+			return copy;
+		}
+		CardGame r = (CardGame) deepClone(this);
+		if (r == null) {
+			throw new IllegalStateException("Unable to clone " + getName());
+		}
+		return r;
+	}
+	
+	/**
+	 * Create a fresh game of the same variation, into which this game can be
+	 * copied by copyInto(). Variations return null (the default) if they
+	 * should instead be cloned via serialization.
+	 * 
+	 * @return
+	 */
+	protected AbstractCardGame newInstance() {
+		return null;
+	}
+	
+	/**
+	 * Copy the state of this game into a fresh game of the same variation.
+	 * Variations with additional state should override this and copy that
+	 * state as well.
+	 * 
+	 * @param copy
+	 */
+	protected void copyInto(AbstractCardGame copy) {
+		for (int i = 0; i != 4; ++i) {
+			copy.players[i].getHand().copyFrom(players[i].getHand());
 		}
+		System.arraycopy(tricks, 0, copy.tricks, 0, 4);
+		System.arraycopy(scores, 0, copy.scores, 0, 4);
+		copy.trumps = trumps;
+		copy.currentTrick = currentTrick == null ? null : currentTrick.copy();
+		copy.tracker.copyFrom(tracker);
 	}
 	
 	/**
@@ -104,13 +183,74 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 		}
 	}
 	
+	// ========================================================
+	// Conversion to and from GameState
+	// ========================================================
+	
+	/**
+	 * Take an immutable snapshot of this game.
+	 * 
+	 * @return
+	 */
+	public GameState toState() {
+		long[] hands = new long[4];
+		for (int i = 0; i != 4; ++i) {
+			hands[i] = players[i].getHand().mask();
+		}
+		return new GameState(hands, currentTrick, trumps, tricks,
+				tracker.getPlayed(), tracker.getVoids(), scores, getCounters());
+	}
+	
+	/**
+	 * Overwrite this game with the contents of the given snapshot, which
+	 * should have been taken from a game of the same variation.
+	 * 
+	 * @param state
+	 */
+	public void restore(GameState state) {
+		for (Player.Direction d : Player.Direction.values()) {
+			Hand hand = players[d.ordinal()].getHand();
+			hand.clear();
+			long bits = state.getHand(d);
+			while (bits != 0) {
+				hand.add(Card.ofIndex(Long.numberOfTrailingZeros(bits)));
+				bits &= bits - 1;
+			}
+			tricks[d.ordinal()] = state.getTricksWon(d);
+			scores[d.ordinal()] = state.getOverallScore(d);
+		}
+		trumps = state.getTrumps();
+		currentTrick = state.getTrick();
+		tracker.set(state.getPlayed(), state.getVoids());
+		clearMoves();
+		setCounters(state.getCounters());
+	}
+	
+	/**
+	 * Get any counters this variation keeps in addition to the state held
+	 * here, so they can be included in a GameState.
+	 * 
+	 * @return
+	 */
+	protected int[] getCounters() {
+		return new int[0];
+	}
+	
+	/**
+	 * Restore the counters previously returned by getCounters().
+	 * 
+	 * @param counters
+	 */
+	protected void setCounters(int[] counters) {
+	}
+	
 	// ========================================================
 	// Methods required for CardGame
 	// ========================================================
 	
 	@Override
 	public Player getPlayer(Player.Direction d) {
-		return players.get(d);
+		return players[d.ordinal()];
 	}
 
 	@Override
@@ -118,10 +258,15 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 		return currentTrick;
 	}
 	
+	@Override
+	public CardTracker getTracker() {
+		return tracker;
+	}
+	
 	@Override
 	public boolean isHandFinished() {
-		for (Player.Direction d : Player.Direction.values()) {
-			if (players.get(d).getHand().size() > 0) {
+		for (Player pl : players) {
+			if (pl.getHand().size() > 0) {
 				return false;
 			}
 		}
@@ -129,41 +274,145 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 	}
 	
 	@Override
-	public Set<Direction> getWinnersOfGame() {		
-		int maxScore = 0;
-		// first, calculate winning score
-		for (Player.Direction d : Player.Direction.values()) {
-			maxScore = Math.max(maxScore, scores.get(d));
-		}
-		
-		// second, calculate winners
-		HashSet<Direction> winners = new HashSet<Direction>();
+	public Set<Direction> getWinnersOfGame() {
+		EnumSet<Direction> winners = EnumSet.noneOf(Direction.class);
+		int mask = getWinnerMask();
 		for (Player.Direction d : Player.Direction.values()) {
-			if(scores.get(d) == maxScore) {
+			if ((mask & (1 << d.ordinal())) != 0) {
 				winners.add(d);
 			}
 		}
 		return winners;
 	}
 	
+	@Override
+	public int getWinnerMask() {
+		return maxMask(scores);
+	}
+	
+	@Override
+	public long positionHash() {
+		long h = 0;
+		for (Player pl : players) {
+			h ^= pl.getHand().hash();
+		}
+		// trumps are taken from the trick, so that the last trick of a hand,
+		// which stays current until the next hand starts, is hashed with the
+		// trumps it was played under rather than the next hand's
+		if (currentTrick != null) {
+			h ^= currentTrick.hash() ^ Zobrist.trumps(currentTrick.getTrumps());
+		} else {
+			h ^= Zobrist.trumps(trumps);
+		}
+		return h;
+	}
+	
 	@Override
 	public Map<Player.Direction,Integer> getTricksWon() {
-		return tricks;
+		return toMap(tricks);
+	}
+	
+	@Override
+	public int getTricksWon(Player.Direction d) {
+		return tricks[d.ordinal()];
 	}
 	
 	@Override
 	public Map<Player.Direction,Integer> getOverallScores() {
-		return scores;
+		return toMap(scores);
 	}	
+	
+	@Override
+	public int getOverallScore(Player.Direction d) {
+		return scores[d.ordinal()];
+	}
 			
 	@Override
 	public void play(Direction player, Card card) throws IllegalMove {
-		Player pl = players.get(player);
+		Player pl = players[player.ordinal()];
 		currentTrick.play(pl, card);
+		tracker.record(player, card, currentTrick.getLeadSuit());
 	}	
 	
+	@Override
+	public Trick.Status tryPlay(Direction player, Card card) {
+		if (currentTrick == null) {
+			return Trick.Status.NOT_YOUR_TURN;
+		}
+		Trick.Status status = currentTrick.tryPlay(players[player.ordinal()], card);
+		if (status == Trick.Status.OK) {
+			tracker.record(player, card, currentTrick.getLeadSuit());
+		}
+		return status;
+	}
+	
+	@Override
+	public long legalMoves(Direction player) {
+		if (currentTrick == null) {
+			return 0;
+		}
+		return currentTrick.legalMoves(players[player.ordinal()]);
+	}
+	
+	@Override
+	public void makeMove(Direction player, Card card) throws IllegalMove {
+		if (moves == null) {
+			moves = new int[52];
+			completed = new Trick[13];
+			started = new Trick[14];
+		}
+		currentTrick.play(players[player.ordinal()], card);
+		int move = card.index() | (player.ordinal() << 6);
+		if (tracker.record(player, card, currentTrick.getLeadSuit())) {
+			move |= MOVE_VOID;
+		}
+		if (currentTrick.size() == 4) {
+			Player.Direction winner = currentTrick.getWinner();
+			tricks[winner.ordinal()]++;
+			completed[completedCount++] = currentTrick;
+			Trick next = started[completedCount];
+			if (next == null) {
+				next = new Trick(winner, trumps);
+				started[completedCount] = next;
+			} else {
+				next.reset(winner, trumps);
+			}
+			currentTrick = next;
+			move |= MOVE_COMPLETED;
+		}
+		moves[moveCount++] = move;
+	}
+	
+	@Override
+	public void unmakeMove() {
+		if (moveCount == 0) {
+			throw new IllegalStateException("No move to undo");
+		}
+		int move = moves[--moveCount];
+		if ((move & MOVE_COMPLETED) != 0) {
+			currentTrick = completed[--completedCount];
+			completed[completedCount] = null;
+			tricks[currentTrick.getWinner().ordinal()]--;
+		}
+		Player pl = players[(move >>> 6) & 3];
+		Card card = currentTrick.retract(pl);
+		tracker.unrecord(pl.getDirection(), card, currentTrick.getLeadSuit(),
+				(move & MOVE_VOID) != 0);
+	}
+	
+	/**
+	 * Forget all moves made by makeMove(), so they can no longer be undone.
+	 */
+	protected void clearMoves() {
+		moveCount = 0;
+		while (completedCount > 0) {
+			completed[--completedCount] = null;
+		}
+	}
+	
 	@Override
 	public void startRound() {
+		clearMoves();
 		// First, decide who the leader is for this round
 		Player.Direction d = Player.Direction.NORTH;		
 		if(currentTrick != null) {						
@@ -176,8 +425,7 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 	@Override
 	public void endRound() {
 		// Score previous round
-		Player.Direction winner = currentTrick.getWinner(); 
-		tricks.put(winner, tricks.get(winner) + 1);
+		tricks[currentTrick.getWinner().ordinal()]++;
 	}
 	
 	@Override
@@ -185,20 +433,17 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 		// Update scores since we've completed a hand
 		scoreHand();
 		resetTricksWon();
+		tracker.clear();
 		// now cycle trumps
 		trumps = nextTrumps(currentTrick.getTrumps());
 	}
 	
 	public void scoreHand() {
-		int maxScore = 0;
-		// first, calculate winning score
-		for (Player.Direction d : Player.Direction.values()) {
-			maxScore = Math.max(maxScore, tricks.get(d));
-		}
-		// second, update winners
-		for (Player.Direction d : Player.Direction.values()) {
-			if(tricks.get(d) == maxScore) {
-				scores.put(d, scores.get(d) + 1);
+		// every player with the most tricks scores a point
+		int mask = maxMask(tricks);
+		for (int i = 0; i != 4; ++i) {
+			if ((mask & (1 << i)) != 0) {
+				scores[i]++;
 			}
 		}
 	}
@@ -208,14 +453,105 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 	// ========================================================
 	
 	protected void resetTricksWon() {
-		for(Player.Direction d : Player.Direction.values()) {
-			tricks.put(d, 0);
-		}
+		Arrays.fill(tricks, 0);
 	}
 	
 	protected void resetOverallScores() {
-		for(Player.Direction d : Player.Direction.values()) {
-			scores.put(d, 0);
+		Arrays.fill(scores, 0);
+	}
+	
+	/**
+	 * Determine which players share the highest value in the given table,
+	 * returned as a mask with bit d.ordinal() set for each of them.
+	 * 
+	 * @param values
+	 * @return
+	 */
+	protected static int maxMask(int[] values) {
+		int max = 0;
+		int mask = 0;
+		for (int i = 0; i != 4; ++i) {
+			if (values[i] > max) {
+				max = values[i];
+				mask = 1 << i;
+			} else if (values[i] == max) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+	
+	/**
+	 * Build a read-only map view of a per-player table. The view reads
+	 * through to the table, so always shows its current values.
+	 * 
+	 * @param values
+	 * @return
+	 */
+	private static Map<Player.Direction,Integer> toMap(int[] values) {
+		return new SeatMap(values);
+	}
+	
+	/**
+	 * A read-only map from each direction to its entry in a per-player
+	 * table, indexed by direction ordinal.
+	 */
+	private static final class SeatMap extends AbstractMap<Player.Direction,Integer> {
+		private static final Player.Direction[] SEATS = Player.Direction.values();
+		private final int[] values;
+		
+		SeatMap(int[] values) {
+			this.values = values;
+		}
+		
+		@Override
+		public int size() {
+			return 4;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Player.Direction;
+		}
+		
+		@Override
+		public Integer get(Object key) {
+			if (!(key instanceof Player.Direction)) {
+				return null;
+			}
+			return values[((Player.Direction) key).ordinal()];
+		}
+		
+		@Override
+		public Set<Map.Entry<Player.Direction,Integer>> entrySet() {
+			return new AbstractSet<Map.Entry<Player.Direction,Integer>>() {
+				@Override
+				public int size() {
+					return 4;
+				}
+				
+				@Override
+				public Iterator<Map.Entry<Player.Direction,Integer>> iterator() {
+					return new Iterator<Map.Entry<Player.Direction,Integer>>() {
+						private int next;
+						
+						@Override
+						public boolean hasNext() {
+							return next != 4;
+						}
+						
+						@Override
+						public Map.Entry<Player.Direction,Integer> next() {
+							if (next == 4) {
+								throw new NoSuchElementException();
+							}
+							int i = next++;
+							return new AbstractMap.SimpleImmutableEntry<Player.Direction,Integer>(
+									SEATS[i], values[i]);
+						}
+					};
+				}
+			};
 		}
 	}
 
@@ -229,7 +565,7 @@ public abstract class AbstractCardGame implements CardGame, Serializable {
 		ArrayList<Card> deck = new ArrayList<Card>();
 		for (Card.Suit suit : Card.Suit.values()) {
 			for (Card.Rank rank : Card.Rank.values()) {
-				deck.add(new Card(suit, rank));
+				deck.add(Card.of(suit, rank));
 			}
 		}
 		return deck;
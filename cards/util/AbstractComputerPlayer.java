@@ -12,6 +12,12 @@ import cards.core.*;
 public abstract class AbstractComputerPlayer {
 	protected Player player;
 	
+	/**
+	 * What the table has seen of the current hand, or null if this player has
+	 * not been given a game's tracker (see GameEngine).
+	 */
+	protected CardTracker tracker;
+	
     public AbstractComputerPlayer(Player player) {
     	this.player = player;
     }
@@ -21,4 +27,17 @@ public abstract class AbstractComputerPlayer {
 	public void setPlayer(Player player) {
 		this.player = player;
 	}
+	
+	public CardTracker getTracker() {
+		return tracker;
+	}
+	
+	/**
+	 * Give this player the tracker of the game it is playing in, or null.
+	 * 
+	 * @param tracker
+	 */
+	public void setTracker(CardTracker tracker) {
+		this.tracker = tracker;
+	}
 }
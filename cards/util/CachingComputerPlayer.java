@@ -0,0 +1,124 @@
+package cards.util;
+
+import cards.core.Card;
+import cards.core.CardTracker;
+import cards.core.Player;
+import cards.core.Trick;
+
+/**
+ * Wraps another computer player, remembering the cards it chooses in a
+ * DecisionCache so that a situation met again is answered without asking it.
+ * This is only correct for players which always choose the same card given
+ * the same situation, and nothing else. By default a situation is the hand,
+ * trick, trumps and seat, which is enough for e.g. SimpleComputerPlayer.
+ * Players which also consult the tracker (see AbstractComputerPlayer), such
+ * as PIMCPlayer or ISMCTSPlayer with a fixed budget and seed, need the cards
+ * played and voids shown to be part of the situation too, which is asked for
+ * when the player is constructed. A cache may be shared by any number of
+ * players and threads, but only between players of the same kind and
+ * settings.
+ *
+ * A situation is encoded in three longs: the first holds the hand (52 bits),
+ * trumps, the seat and the number of cards in the trick, the second the
+ * cards in the trick, six bits each, and the voids shown (16 bits from bit
+ * 24), and the third the cards played. The last two are left out unless the
+ * tracker is part of the situation. If it is, but no tracker has been set,
+ * the delegate is asked every time and nothing is cached.
+ *
+ */
+public class CachingComputerPlayer extends AbstractComputerPlayer {
+	private final AbstractComputerPlayer delegate;
+	private final DecisionCache cache;
+	private final boolean tracked;
+
+	/**
+	 * Construct a player which consults the given cache before asking the
+	 * given player, which must not consult the tracker.
+	 *
+	 * @param player
+	 * @param delegate
+	 * @param cache
+	 */
+	public CachingComputerPlayer(Player player, AbstractComputerPlayer delegate,
+			DecisionCache cache) {
+		this(player, delegate, cache, false);
+	}
+
+	/**
+	 * Construct a player which consults the given cache before asking the
+	 * given player.
+	 *
+	 * @param player
+	 * @param delegate
+	 * @param cache
+	 * @param tracked
+	 *            --- true if the delegate consults the tracker, so that the
+	 *            cards played and voids shown are part of the situation.
+	 */
+	public CachingComputerPlayer(Player player, AbstractComputerPlayer delegate,
+			DecisionCache cache, boolean tracked) {
+		super(player);
+		this.delegate = delegate;
+		this.cache = cache;
+		this.tracked = tracked;
+	}
+
+	public Card getNextCard(Trick trick) {
+		int size = trick.size();
+		Card.Suit trumps = trick.getTrumps();
+		long key1 = player.getHand().mask()
+				| (long) (trumps == null ? 4 : trumps.ordinal()) << 52
+				| (long) player.getDirection().ordinal() << 55
+				| (long) size << 57;
+		long key2 = 0;
+		for (int i = 0; i != size; ++i) {
+			key2 |= (long) trick.getCard(i).index() << (6 * i);
+		}
+		long key3 = 0;
+		if (tracked) {
+			if (tracker == null) {
+				// the history is part of the situation but unknown, so the
+				// card cannot be cached
+				return delegate.getNextCard(trick);
+			}
+			key2 |= (long) tracker.getVoids() << 24;
+			key3 = tracker.getPlayed();
+		}
+		int card = cache.get(key1, key2, key3);
+		if (card != DecisionCache.MISSING) {
+			return Card.ofIndex(card);
+		}
+		Card c = delegate.getNextCard(trick);
+		cache.put(key1, key2, key3, c.index());
+		return c;
+	}
+
+	/**
+	 * Check whether the cards played and voids shown are part of the
+	 * situation.
+	 *
+	 * @return
+	 */
+	public boolean isTracked() {
+		return tracked;
+	}
+
+	/**
+	 * Get the player whose decisions are cached.
+	 *
+	 * @return
+	 */
+	public AbstractComputerPlayer getDelegate() {
+		return delegate;
+	}
+
+	public void setPlayer(Player player) {
+		super.setPlayer(player);
+		delegate.setPlayer(player);
+	}
+
+	public void setTracker(CardTracker tracker) {
+		super.setTracker(tracker);
+		delegate.setTracker(tracker);
+	}
+}
@@ -0,0 +1,392 @@
+package cards.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the cards chosen by computer players, keyed by a
+ * compact encoding of what the player could see (see CachingComputerPlayer).
+ * Keys are three longs and values are card indices, all held in primitive
+ * arrays, so looking up and storing decisions allocates nothing.
+ *
+ * The cache is split into segments by key, each guarded by its own lock, so
+ * many threads can share one cache. Each segment holds a fixed number of
+ * entries in an open-addressed index, and once it is full, storing a new
+ * entry evicts an old one according to the eviction policy. Counts of hits,
+ * misses and evictions are kept for the whole cache.
+ *
+ */
+public final class DecisionCache {
+
+	/**
+	 * Decides which entry of a full segment is evicted.
+	 *
+	 */
+	public enum Policy {
+		/**
+		 * Evict the entry used least recently. Every hit moves its entry to
+		 * the front of a list.
+		 */
+		LRU,
+		/**
+		 * Evict the first entry not used since the clock hand last passed it.
+		 * A hit only sets a flag, so is cheaper than for LRU, at the cost of
+		 * a rougher idea of recency.
+		 */
+		CLOCK;
+	}
+
+	/**
+	 * Value returned by get() when the key is not in the cache.
+	 */
+	public static final int MISSING = -1;
+	private static final int NONE = -1;
+
+	private final Segment[] segments;
+	private final Policy policy;
+	private final int capacity;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Construct a CLOCK cache holding up to about the given number of
+	 * decisions, with 16 segments.
+	 *
+	 * @param capacity
+	 */
+	public DecisionCache(int capacity) {
+		this(capacity, Policy.CLOCK, 16);
+	}
+
+	/**
+	 * Construct a cache holding up to about the given number of decisions,
+	 * split evenly over the given number of segments (rounded up to a power
+	 * of two).
+	 *
+	 * @param capacity
+	 * @param policy
+	 * @param segments
+	 */
+	public DecisionCache(int capacity, Policy policy, int segments) {
+		if (policy == null) {
+			throw new IllegalArgumentException("Eviction policy must not be null");
+		}
+		if (capacity < 1 || segments < 1 || segments > capacity) {
+			throw new IllegalArgumentException("Invalid cache size");
+		}
+		int n = Integer.highestOneBit(segments);
+		if (n < segments) {
+			n <<= 1;
+		}
+		int perSegment = (capacity + n - 1) / n;
+		this.segments = new Segment[n];
+		for (int i = 0; i != n; ++i) {
+			this.segments[i] = new Segment(perSegment);
+		}
+		this.policy = policy;
+		this.capacity = perSegment * n;
+	}
+
+	/**
+	 * Get the card stored for the given key, or MISSING.
+	 *
+	 * @param key1
+	 * @param key2
+	 * @param key3
+	 * @return card index
+	 */
+	public int get(long key1, long key2, long key3) {
+		long h = hash(key1, key2, key3);
+		int card = segment(h).get(key1, key2, key3, (int) h);
+		if (card == MISSING) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return card;
+	}
+
+	/**
+	 * Store the card chosen for the given key, evicting an older entry if
+	 * the key's segment is full.
+	 *
+	 * @param key1
+	 * @param key2
+	 * @param key3
+	 * @param card
+	 */
+	public void put(long key1, long key2, long key3, int card) {
+		long h = hash(key1, key2, key3);
+		if (segment(h).put(key1, key2, key3, (int) h, card)) {
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Remove every entry. The counters are not reset.
+	 */
+	public void clear() {
+		for (Segment s : segments) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * Get the number of decisions held.
+	 *
+	 * @return
+	 */
+	public int size() {
+		int n = 0;
+		for (Segment s : segments) {
+			n += s.size();
+		}
+		return n;
+	}
+
+	/**
+	 * Get the largest number of decisions the cache can hold.
+	 *
+	 * @return
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Get the number of lookups which found a decision.
+	 *
+	 * @return
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Get the number of lookups which found nothing.
+	 *
+	 * @return
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Get the number of decisions evicted to make room for others.
+	 *
+	 * @return
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	private static long hash(long key1, long key2, long key3) {
+		long h = key1 * 0x9E3779B97F4A7C15L ^ key2 * 0xC2B2AE3D27D4EB4FL
+				^ key3 * 0x165667B19E3779F9L;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return h ^ (h >>> 32);
+	}
+
+	/**
+	 * Get the segment for a hash. The high 32 bits of the hash choose the
+	 * segment, and the low 32 bits choose the slot within it (see
+	 * Segment.slot()), so the two never overlap however many segments there
+	 * are.
+	 */
+	private Segment segment(long h) {
+		return segments[(int) (h >>> 32) & (segments.length - 1)];
+	}
+
+	// ========================================================
+	// Segments
+	// ========================================================
+
+	/**
+	 * One lock's worth of the cache: entries in fixed arrays, found through
+	 * an index of at least twice their number with linear probing, and
+	 * linked into a list (for LRU) or swept by a clock hand (for CLOCK).
+	 */
+	private final class Segment {
+		private final long[] keys1, keys2, keys3;
+		private final int[] hashes;
+		private final byte[] cards;
+		private final boolean[] referenced;	// CLOCK
+		private final int[] prev, next;	// LRU, most recent first
+		private final int[] index;	// entry + 1, or 0 if empty
+		private int count;
+		private int head = NONE, tail = NONE;
+		private int hand;
+
+		Segment(int entries) {
+			keys1 = new long[entries];
+			keys2 = new long[entries];
+			keys3 = new long[entries];
+			hashes = new int[entries];
+			cards = new byte[entries];
+			referenced = new boolean[entries];
+			prev = new int[entries];
+			next = new int[entries];
+			int size = Integer.highestOneBit(entries) << 2;
+			index = new int[size];
+		}
+
+		synchronized int get(long key1, long key2, long key3, int h) {
+			int e = find(key1, key2, key3, h);
+			if (e == NONE) {
+				return MISSING;
+			}
+			touch(e);
+			return cards[e];
+		}
+
+		/**
+		 * Store a card, returning true if an entry was evicted.
+		 */
+		synchronized boolean put(long key1, long key2, long key3, int h,
+				int card) {
+			int e = find(key1, key2, key3, h);
+			if (e != NONE) {
+				cards[e] = (byte) card;
+				touch(e);
+				return false;
+			}
+			boolean evicted = count == keys1.length;
+			if (evicted) {
+				e = victim();
+				unindex(e);
+				if (policy == Policy.LRU) {
+					unlink(e);
+				}
+			} else {
+				e = count++;
+			}
+			keys1[e] = key1;
+			keys2[e] = key2;
+			keys3[e] = key3;
+			hashes[e] = h;
+			cards[e] = (byte) card;
+			referenced[e] = true;
+			if (policy == Policy.LRU) {
+				linkFirst(e);
+			}
+			int mask = index.length - 1;
+			int i = slot(h);
+			while (index[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			index[i] = e + 1;
+			return evicted;
+		}
+
+		synchronized void clear() {
+			for (int i = 0; i != index.length; ++i) {
+				index[i] = 0;
+			}
+			count = 0;
+			head = NONE;
+			tail = NONE;
+			hand = 0;
+		}
+
+		synchronized int size() {
+			return count;
+		}
+
+		private int find(long key1, long key2, long key3, int h) {
+			int mask = index.length - 1;
+			for (int i = slot(h); index[i] != 0; i = (i + 1) & mask) {
+				int e = index[i] - 1;
+				if (hashes[e] == h && keys1[e] == key1 && keys2[e] == key2
+						&& keys3[e] == key3) {
+					return e;
+				}
+			}
+			return NONE;
+		}
+
+		/**
+		 * Record a use of an entry.
+		 */
+		private void touch(int e) {
+			if (policy == Policy.CLOCK) {
+				referenced[e] = true;
+			} else if (head != e) {
+				unlink(e);
+				linkFirst(e);
+			}
+		}
+
+		/**
+		 * Choose the entry to evict from a full segment.
+		 */
+		private int victim() {
+			if (policy == Policy.LRU) {
+				return tail;
+			}
+			// give each entry used since the last sweep a second chance
+			while (referenced[hand]) {
+				referenced[hand] = false;
+				hand = (hand + 1) % keys1.length;
+			}
+			int e = hand;
+			hand = (hand + 1) % keys1.length;
+			return e;
+		}
+
+		/**
+		 * Remove an entry from the index, shifting back any entries after it
+		 * in its run which would otherwise no longer be found.
+		 */
+		private void unindex(int e) {
+			int mask = index.length - 1;
+			int i = slot(hashes[e]);
+			while (index[i] != e + 1) {
+				i = (i + 1) & mask;
+			}
+			for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask) {
+				int home = slot(hashes[index[j] - 1]);
+				// move j back into the hole unless its home lies in (i, j]
+				boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+				if (!stays) {
+					index[i] = index[j];
+					i = j;
+				}
+			}
+			index[i] = 0;
+		}
+
+		private void linkFirst(int e) {
+			prev[e] = NONE;
+			next[e] = head;
+			if (head != NONE) {
+				prev[head] = e;
+			} else {
+				tail = e;
+			}
+			head = e;
+		}
+
+		private void unlink(int e) {
+			if (prev[e] != NONE) {
+				next[prev[e]] = next[e];
+			} else {
+				head = next[e];
+			}
+			if (next[e] != NONE) {
+				prev[next[e]] = prev[e];
+			} else {
+				tail = prev[e];
+			}
+		}
+
+		private int slot(int h) {
+			// the other half of the hash chose the segment
+			return h & (index.length - 1);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package cards.util;
+
+import cards.core.Card;
+import cards.core.Hand;
+import cards.core.Player;
+import cards.core.Trick;
+
+/**
+ * A drop-in replacement for SimpleComputerPlayer which makes exactly the same
+ * decisions, quirks included, but works on the card masks of the hand and
+ * trick rather than on collections. The highest and lowest rank held in a
+ * suit are read from tables indexed by the suit's 13-bit rank mask, so
+ * choosing a card allocates nothing.
+ *
+ * See SimpleComputerPlayer for the rules. In terms of masks, they come down
+ * to the following. A player who can follow suit plays their highest card
+ * of the suit if they "can win" and their lowest otherwise, except that the
+ * last to play takes the trick as cheaply as they can. A player who cannot
+ * follow (or who leads) does the same with their trumps if they have any,
+ * and otherwise leads their highest card by rank, or discards their lowest.
+ * Whether they can win is decided by their highest trump against the
+ * highest trump played if a trump has been played, and otherwise by their
+ * highest card in the suit led against the highest card played by rank,
+ * compared in the natural order of cards.
+ *
+ */
+public class FastSimpleComputerPlayer extends AbstractComputerPlayer {
+	private static final byte[] HIGHEST = new byte[1 << 13];
+	private static final byte[] LOWEST = new byte[1 << 13];
+
+	static {
+		HIGHEST[0] = -1;
+		LOWEST[0] = -1;
+		for (int bits = 1; bits != 1 << 13; ++bits) {
+			HIGHEST[bits] = (byte) (31 - Integer.numberOfLeadingZeros(bits));
+			LOWEST[bits] = (byte) Integer.numberOfTrailingZeros(bits);
+		}
+	}
+
+	public FastSimpleComputerPlayer(Player player) {
+		super(player);
+	}
+
+	public Card getNextCard(Trick trick) {
+		long hand = player.getHand().mask();
+		int size = trick.size();
+		Card.Suit leadSuit = trick.getLeadSuit();
+		Card.Suit trumpSuit = trick.getTrumps();
+		int lead = leadSuit == null ? -1 : leadSuit.ordinal();
+		int trumps = trumpSuit == null ? -1 : trumpSuit.ordinal();
+		// the highest lead and trump ranks played, and the highest card
+		// played by rank (then suit), or -1 if there are none
+		int leadHigh = -1;
+		int trumpHigh = -1;
+		int best = -1;
+		for (int i = 0; i != size; ++i) {
+			int card = trick.getCard(i).index();
+			int suit = card / 13;
+			int rank = card % 13;
+			if (suit == lead && rank > leadHigh) {
+				leadHigh = rank;
+			}
+			if (suit == trumps && rank > trumpHigh) {
+				trumpHigh = rank;
+			}
+			if (best < 0 || rank * 4 + suit > best % 13 * 4 + best / 13) {
+				best = card;
+			}
+		}
+		int trumpBits = trumps < 0 ? 0 : bits(hand, trumps);
+		int leadBits = lead < 0 ? 0 : bits(hand, lead);
+		if (leadBits != 0) {
+			boolean win = trumpHigh >= 0 ? trumpBits != 0 && HIGHEST[trumpBits] > trumpHigh
+					: lead * 13 + HIGHEST[leadBits] > best;
+			return pick(lead, leadBits, win, size, leadHigh);
+		}
+		if (trumpBits != 0) {
+			// a trump can only "win" if trumps have been played, or on lead
+			boolean win = trumpHigh >= 0 ? HIGHEST[trumpBits] > trumpHigh : size == 0;
+			return pick(trumps, trumpBits, win, size, trumpHigh);
+		}
+		// with no card to follow and no trumps, only a leader can win
+		int card = -1;
+		for (int suit = 0; suit != 4; ++suit) {
+			int b = bits(hand, suit);
+			if (b == 0) {
+				continue;
+			}
+			int rank = size == 0 ? HIGHEST[b] : LOWEST[b];
+			if (card < 0 || (size == 0 ? rank >= card % 13 : rank < card % 13)) {
+				card = suit * 13 + rank;
+			}
+		}
+		return Card.ofIndex(card);
+	}
+
+	/**
+	 * Choose a card of the given suit, whose ranks held are in bits: the
+	 * highest if the player can win and is not last to play, the lowest
+	 * above the given rank if they can win and are last, and otherwise the
+	 * lowest.
+	 */
+	private static Card pick(int suit, int bits, boolean win, int size, int high) {
+		int rank;
+		if (!win) {
+			rank = LOWEST[bits];
+		} else if (size != 3) {
+			rank = HIGHEST[bits];
+		} else {
+			int above = bits & -(2 << high);
+			rank = LOWEST[above != 0 ? above : bits];
+		}
+		return Card.ofIndex(suit * 13 + rank);
+	}
+
+	private static int bits(long hand, int suit) {
+		return (int) (hand >>> (suit * 13)) & Hand.SUIT_BITS;
+	}
+}
@@ -0,0 +1,242 @@
+package cards.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import cards.core.*;
+
+/**
+ * Drives a card game through its hands and rounds without any user
+ * interface. Each seat may be given a computer player, which the engine asks
+ * for a card when that seat is next to play. Seats without a computer player
+ * are left to the client (e.g. the TableFrame for human players).
+ *
+ * The engine can either be stepped one event at a time, or asked to play a
+ * whole game between four computer players with playGame(), which runs at
+ * full speed with no threads or delays.
+ *
+ */
+public class GameEngine {
+
+	/**
+	 * What happens next after a round has been finished.
+	 *
+	 */
+	public enum Outcome {
+		/**
+		 * The hand continues with another round.
+		 */
+		NEXT_ROUND,
+		/**
+		 * The hand is over, and another hand should be dealt.
+		 */
+		NEXT_HAND,
+		/**
+		 * The game is over.
+		 */
+		GAME_OVER;
+	}
+
+	private CardGame game;
+	private final AbstractComputerPlayer[] computerPlayers = new AbstractComputerPlayer[4];
+	private final Random random;
+	private final int[] tricksTaken = new int[4];
+	private int handsPlayed;
+
+	/**
+	 * Construct an engine for the given game, which shuffles with an unseeded
+	 * random number generator.
+	 *
+	 * @param game
+	 */
+	public GameEngine(CardGame game) {
+		this(game, new Random());
+	}
+
+	/**
+	 * Construct an engine for the given game, which shuffles every deck using
+	 * the given random number generator.
+	 *
+	 * @param game
+	 * @param random
+	 */
+	public GameEngine(CardGame game, Random random) {
+		this.game = game;
+		this.random = random;
+	}
+
+	public CardGame getGame() {
+		return game;
+	}
+
+	/**
+	 * Switch to a different game, moving the computer players across to
+	 * their seats and tracker in it.
+	 *
+	 * @param game
+	 */
+	public void setGame(CardGame game) {
+		this.game = game;
+		for (Player.Direction d : Player.Direction.values()) {
+			AbstractComputerPlayer cp = computerPlayers[d.ordinal()];
+			if (cp != null) {
+				cp.setPlayer(game.getPlayer(d));
+				cp.setTracker(game.getTracker());
+			}
+		}
+	}
+
+	/**
+	 * Get the computer player sitting at the given direction, or null if that
+	 * seat is not played by the computer.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public AbstractComputerPlayer getComputerPlayer(Player.Direction d) {
+		return computerPlayers[d.ordinal()];
+	}
+
+	/**
+	 * Seat a computer player at the given direction, or clear the seat if
+	 * player is null. The player is given the game's card tracker.
+	 *
+	 * @param d
+	 * @param player
+	 */
+	public void setComputerPlayer(Player.Direction d, AbstractComputerPlayer player) {
+		computerPlayers[d.ordinal()] = player;
+		if (player != null) {
+			player.setTracker(game.getTracker());
+		}
+	}
+
+	// ========================================================
+	// Statistics
+	// ========================================================
+
+	/**
+	 * Get the total number of tricks the given player has taken, over all
+	 * hands finished since the statistics were last reset.
+	 *
+	 * @param d
+	 * @return
+	 */
+	public int getTricksTaken(Player.Direction d) {
+		return tricksTaken[d.ordinal()];
+	}
+
+	/**
+	 * Get the number of hands finished since the statistics were last reset.
+	 *
+	 * @return
+	 */
+	public int getHandsPlayed() {
+		return handsPlayed;
+	}
+
+	/**
+	 * Reset the trick and hand counts. This is done automatically at the
+	 * start of playGame().
+	 */
+	public void resetStatistics() {
+		for (int i = 0; i != 4; ++i) {
+			tricksTaken[i] = 0;
+		}
+		handsPlayed = 0;
+	}
+
+	// ========================================================
+	// Game flow
+	// ========================================================
+
+	/**
+	 * Shuffle and deal a new hand, and start its first round.
+	 */
+	public void startHand() {
+		List<Card> deck = AbstractCardGame.createDeck();
+		Collections.shuffle(deck, random);
+		game.deal(deck);
+		game.startRound();
+	}
+
+	/**
+	 * Start the next round of the current hand.
+	 */
+	public void startRound() {
+		game.startRound();
+	}
+
+	/**
+	 * Finish the current round, which must be complete. This ends the hand
+	 * too if it has no cards left, and reports what should happen next.
+	 *
+	 * @return
+	 */
+	public Outcome finishRound() {
+		tricksTaken[game.getTrick().getWinner().ordinal()]++;
+		game.endRound();
+		if (!game.isHandFinished()) {
+			return Outcome.NEXT_ROUND;
+		}
+		game.endHand();
+		handsPlayed++;
+		if (game.isGameFinished()) {
+			return Outcome.GAME_OVER;
+		}
+		return Outcome.NEXT_HAND;
+	}
+
+	/**
+	 * If the next player to play is a computer player, ask it for a card and
+	 * play it.
+	 *
+	 * @return the card played, or null if the next player is not a computer
+	 *         player (or the round is complete).
+	 */
+	public Card playComputer() {
+		Trick trick = game.getTrick();
+		Player.Direction next = trick.getNextToPlay();
+		if (next == null) {
+			return null;
+		}
+		AbstractComputerPlayer cp = computerPlayers[next.ordinal()];
+		if (cp == null) {
+			return null;
+		}
+		Card card = cp.getNextCard(trick);
+		if (game.tryPlay(next, card) != Trick.Status.OK) {
+			throw new IllegalStateException("Computer player is cheating!");
+		}
+		return card;
+	}
+
+	/**
+	 * Play a complete game, starting with a fresh deal. Every seat must have a
+	 * computer player.
+	 *
+	 * @return the winners of the game (see CardGame.getWinnerMask()).
+	 */
+	public int playGame() {
+		resetStatistics();
+		startHand();
+		while (true) {
+			if (game.getTrick().getNextToPlay() == null) {
+				switch (finishRound()) {
+				case GAME_OVER:
+					return game.getWinnerMask();
+				case NEXT_HAND:
+					startHand();
+					break;
+				case NEXT_ROUND:
+					startRound();
+					break;
+				}
+			} else if (playComputer() == null) {
+				throw new IllegalStateException(game.getTrick().getNextToPlay()
+						+ " is not a computer player");
+			}
+		}
+	}
+}
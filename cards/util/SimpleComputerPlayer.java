@@ -20,6 +20,7 @@ import cards.core.Trick;
  * 
  */
 public class SimpleComputerPlayer extends AbstractComputerPlayer {
+	private static final RankComparator RANK_ORDER = new RankComparator();
 
 	public SimpleComputerPlayer(Player player) {
 		super(player);
@@ -33,12 +34,11 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 	public Card getNextCard(Trick trick) {
 		//cards in trick
 		List <Card> cards = trick.getCardsPlayed();
-		Card.Suit leadSuit = null;
+		Card.Suit leadSuit = trick.getLeadSuit();
 		Set <Card> cardsSameLead = null;
 
 		//has cards played in trick
-		if (!cards.isEmpty()) {
-			leadSuit = cards.get(0).suit();		//get lead suit
+		if (leadSuit != null) {
 			cardsSameLead = player.getHand().matches(leadSuit);	 //get same-suit cards in player's hands
 		}
 		Card.Suit currentTrumps = trick.getTrumps(); 	//get trumps suit
@@ -109,7 +109,7 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 				return highestSoFar (cardList);
 			}
 			//last play in trick so play conservatively
-			Card highestInPlayed = highestSoFar(trick.matchCardsPlayed(currentTrumps));
+			Card highestInPlayed = trick.highestPlayed(currentTrumps);
 			return conservativePick(trick, highestInPlayed, cardList);
 		} else {
 			//System.out.println("HAS TRUMPS. RETURN LOWEST "+ cardList.get(0).toString());
@@ -137,7 +137,7 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 				return highestSoFar (cardList);
 			}
 			//last play in trick so play conservatively
-			Card highestInPlayed = highestSoFar(trick.matchCardsPlayed(leadSuit));
+			Card highestInPlayed = trick.highestPlayed(leadSuit);
 			return conservativePick(trick, highestInPlayed, cardList);
 		} else {
 			//System.out.println("HAS SAME AS LEAD. RETURN LOWEST "+ cardList.get(0).toString());
@@ -150,7 +150,7 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 	 * i.e. plays the least card needed to win
 	 * @param trick -- this trick that we're making decisions on
 	 * @param highestInPlayed -- the card that has highest value/suit in trick i.e.
-	 * 	highestSoFar(trick.matchCardsPlayed(leadSuit || trumpsSuit || ALL))
+	 * 	the highest card in trick.playedMask(leadSuit || trumpsSuit || ALL)
 	 * @param cardInHand -- List of SOME or ALL cards in player's hand
 	 * 	i.e. 3 cases, if:
 	 * 	PRIORITY 1 (refer to javadoc) means hand has 'lead' suit, then list contains ONLY cards that matches 'lead' suit
@@ -168,8 +168,9 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 				return c;
 			}
 		}
-		//dead code
-		return null;
+		//nothing beats it, which happens when the lead suit has been trumped
+		//and canWin() counted our own trumps, so discard the lowest card
+		return cardInHand.get(0);
 	}
 	
 	/**
@@ -187,8 +188,6 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 	 */
 	private boolean canWin(Trick trick, List<Card> cardInHand, Card.Suit currentTrumps) {
 		if (trick.containsSuit(currentTrumps)) {		//cards played contains trump suit
-			//match cards played that are trump suit
-			List <Card> cardsPlayed = trick.matchCardsPlayed(currentTrumps);
 			//match cards in hand that are trump suit
 			List <Card> matchesCardsInHand = new ArrayList<Card>(player.getHand().matches(currentTrumps));
 
@@ -196,7 +195,7 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 			if (!matchesCardsInHand.isEmpty()) {
 				//get highest in hand and highest in played cards
 				Card highestInHand = highestSoFar(matchesCardsInHand);
-				Card highestInPlayed = highestSoFar(cardsPlayed);
+				Card highestInPlayed = trick.highestPlayed(currentTrumps);
 
 				if (highestInHand.compareTo(highestInPlayed) > 0) {
 					return true;	//can beat highest
@@ -210,8 +209,8 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 
 			if (highestPlayedSoFar != null) {
 				//check if able to follow suit
-				Suit suit = trick.getCardsPlayed().get(0).suit();
-				if (player.hand.matches(suit).isEmpty()) {
+				Suit suit = trick.getLeadSuit();
+				if (!player.hand.hasSuit(suit)) {
 					return false;
 				}
 
@@ -231,13 +230,12 @@ public class SimpleComputerPlayer extends AbstractComputerPlayer {
 	/**
 	 * Returns the card with highest rank, suit in cards
 	 * This is used by different methods in this class
-	 * @param cards -- the list of cards to inspect
+	 * @param cards -- the list of cards to inspect (not modified)
 	 * @return
 	 */
 	private Card highestSoFar(List<Card> cards) {
-		Collections.sort(cards, new RankComparator());
 		if (!cards.isEmpty()) {
-			return cards.get(cards.size()-1);
+			return Collections.max(cards, RANK_ORDER);
 		}
 		return null;
 	}
@@ -24,22 +24,26 @@ public class ClassicWhist extends AbstractCardGame {
 	
 	public boolean isGameFinished() {
 		for (Player.Direction d : Player.Direction.values()) {
-			if (scores.get(d) == 5) {
+			if (scores[d.ordinal()] == 5) {
 				return true;
 			}
 		}
 		return false;
 	}
 	
+	protected AbstractCardGame newInstance() {
+		return new ClassicWhist();
+	}
+	
 	public void deal(List<Card> deck) {	
 		currentTrick = null;
 		for (Player.Direction d : Player.Direction.values()) {
-			players.get(d).getHand().clear();
+			players[d.ordinal()].getHand().clear();
 		}
 		Player.Direction d = Player.Direction.NORTH;
 		for (int i = 0; i < deck.size(); ++i) {
 			Card card = deck.get(i);
-			players.get(d).getHand().add(card);
+			players[d.ordinal()].getHand().add(card);
 			d = d.next();
 		}		
 	}		
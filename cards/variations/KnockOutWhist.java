@@ -23,12 +23,12 @@ public class KnockOutWhist extends AbstractCardGame {
 	public void deal(List<Card> deck) {		
 		currentTrick = null;
 		for (Player.Direction d : Player.Direction.values()) {
-			players.get(d).getHand().clear();
+			players[d.ordinal()].getHand().clear();
 		}
 		Player.Direction d = Player.Direction.NORTH;
 		for (int i = 0; i < hand * 4; ++i) {
 			Card card = deck.get(i);
-			players.get(d).getHand().add(card);
+			players[d.ordinal()].getHand().add(card);
 			d = d.next();
 		}			
 	}	
@@ -37,4 +37,26 @@ public class KnockOutWhist extends AbstractCardGame {
 		super.endHand();
 		hand = hand - 1;
 	}
+	
+	public void reset() {
+		super.reset();
+		hand = 13;
+	}
+	
+	protected AbstractCardGame newInstance() {
+		return new KnockOutWhist();
+	}
+	
+	protected void copyInto(AbstractCardGame copy) {
+		super.copyInto(copy);
+		((KnockOutWhist) copy).hand = hand;
+	}
+	
+	protected int[] getCounters() {
+		return new int[] { hand };
+	}
+	
+	protected void setCounters(int[] counters) {
+		hand = counters[0];
+	}
 }
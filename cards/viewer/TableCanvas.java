@@ -116,7 +116,7 @@ public class TableCanvas extends Canvas implements MouseListener {
 	}
 
 	private int cn(Card c) {
-		return c.suit().ordinal()*13 + c.rank().ordinal();
+		return c.index();
 	}
 	
 	private static final Image[] cardsNorth = new Image[52];	
@@ -3,16 +3,13 @@ package cards.viewer;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 import javax.swing.*;
 
 import cards.core.*;
-import cards.util.AbstractCardGame;
-import cards.util.AbstractComputerPlayer;
+import cards.util.GameEngine;
 import cards.util.SimpleComputerPlayer;
 import cards.variations.*;
 
@@ -31,8 +28,7 @@ public final class TableFrame extends JFrame {
 	private final JLabel trickBar;
 	private final JLabel scoreBar;
 	private final JButton duplicateButton;
-	private Map<Player.Direction,AbstractComputerPlayer> computerPlayers = new HashMap<Player.Direction,AbstractComputerPlayer>();
-	private CardGame game;
+	private final GameEngine engine;
 
 	/**
 	 * Create a TableFrame which asks the user for configuration details about
@@ -45,8 +41,7 @@ public final class TableFrame extends JFrame {
 		// Set all players except south to be computer players by default.
 		for (Player.Direction dir : Player.Direction.values()) {
 			if (dir != Player.Direction.SOUTH) {
-				computerPlayers.put(dir,
-						new SimpleComputerPlayer(game.getPlayer(dir)));
+				setComputerPlayer(dir, true);
 			}
 		}
 
@@ -66,7 +61,7 @@ public final class TableFrame extends JFrame {
 	public TableFrame(CardGame game) {
 		super("Card Game");
 		
-		this.game = game;
+		this.engine = new GameEngine(game);
 		
 		GridBagConstraints c = new GridBagConstraints();
 		c.gridwidth = GridBagConstraints.REMAINDER;
@@ -113,45 +108,37 @@ public final class TableFrame extends JFrame {
 	}
 
 	public CardGame getGame() {
-		return game;
+		return engine.getGame();
 	}
 	
 	public void setGame(CardGame game) {
-		this.game = game;
-		for(Player.Direction d : Player.Direction.values()) {
-			AbstractComputerPlayer cp = computerPlayers.get(d);
-			if(cp != null) {
-				cp.setPlayer(game.getPlayer(d));
-			}
-		}
+		engine.setGame(game);
 	}
 	
 	public boolean isComputerPlayer(Player.Direction player) {
-		return computerPlayers.containsKey(player);
+		return engine.getComputerPlayer(player) != null;
 	}
 
 	public void setComputerPlayer(Player.Direction player, boolean flag) {
 		if(flag) {
-			computerPlayers.put(player, new SimpleComputerPlayer(game.getPlayer(player)));
+			engine.setComputerPlayer(player, new SimpleComputerPlayer(getGame().getPlayer(player)));
 		} else {
-			computerPlayers.remove(player);
+			engine.setComputerPlayer(player, null);
 		}
 	}
 	
 	public void startHand() {
-		// Initially default game is classic whist
-		java.util.List<Card> deck = AbstractCardGame.createDeck();
-		Collections.shuffle(deck);
-		game.deal(deck);
-		startRound();			
+		engine.startHand();
+		continueRound();
 	}
 	
 	public void startRound() {
-		game.startRound();
+		engine.startRound();
 		continueRound();
 	}
 
 	public void continueRound() {		
+		CardGame game = getGame();
 		statusEvent(game.getTrick().getNextToPlay() + " to start");
 		updateScoreBars();
 		
@@ -164,10 +151,18 @@ public final class TableFrame extends JFrame {
 	}
 	
 	public void playedEvent(Player.Direction player, Card card) throws IllegalMove {
-		game.play(player, card);
+		getGame().play(player, card);
+		cardPlayed(player, card);
+	}
+
+	/**
+	 * Update the display once a card has been played, and register a timer
+	 * event if a computer player is next or the round has finished.
+	 */
+	private void cardPlayed(Player.Direction player, Card card) {
 		statusEvent(player + " played " + card);
 		canvas.repaint();
-		Player.Direction nextPlayer = game.getTrick().getNextToPlay();
+		Player.Direction nextPlayer = getGame().getTrick().getNextToPlay();
 		if (nextPlayer == null) {
 			// Round has finished
 			requestTimerEvent(500);
@@ -178,7 +173,7 @@ public final class TableFrame extends JFrame {
 	}
 
 	public void statusEvent(String msg) {
-		Card.Suit trumps = game.getTrick().getTrumps();
+		Card.Suit trumps = getGame().getTrick().getTrumps();
 		if(trumps == null) {
 			statusBar.setText("No trumps, " + msg);
 		} else {
@@ -189,11 +184,11 @@ public final class TableFrame extends JFrame {
 	}
 
 	public void timerEvent() {		
+		CardGame game = getGame();
 		if(game.getTrick().getNextToPlay() == null) {
-			game.endRound();
-			if(game.isHandFinished()) {
-				game.endHand();
-				if(game.isGameFinished()) {
+			GameEngine.Outcome outcome = engine.finishRound();
+			if(outcome != GameEngine.Outcome.NEXT_ROUND) {
+				if(outcome == GameEngine.Outcome.GAME_OVER) {
 					// Ok, the game has finished so signal who actually won, and
 					// ask the player if they want to go again.
 					String str = "";
@@ -226,13 +221,9 @@ public final class TableFrame extends JFrame {
 		} else {
 			// this indicates we're waiting for a computer player to play.
 			Player.Direction nextPlayer = game.getTrick().getNextToPlay();
-			try {
-				AbstractComputerPlayer computerPlayer = computerPlayers.get(nextPlayer);
-				if (computerPlayer != null) {
-					playedEvent(nextPlayer,computerPlayer.getNextCard(game.getTrick()));
-				}
-			} catch (IllegalMove e) {
-				throw new RuntimeException("Computer player is cheating!", e);
+			Card card = engine.playComputer();
+			if (card != null) {
+				cardPlayed(nextPlayer, card);
 			}
 		}
 	}
@@ -252,6 +243,7 @@ public final class TableFrame extends JFrame {
 	}	
 	
 	public void updateScoreBars() {
+		CardGame game = getGame();
 		Map<Player.Direction,Integer> tricks = game.getTricksWon();
 		
 		String trickScore = "";
@@ -279,12 +271,13 @@ public final class TableFrame extends JFrame {
 	}
 	
 	public TableFrame clone() {
-		TableFrame duplicate = new TableFrame(game.clone());
+		TableFrame duplicate = new TableFrame(getGame().clone());
 		
-		// Configure the players map
-		for (Map.Entry<Player.Direction, AbstractComputerPlayer> p : computerPlayers
-				.entrySet()) {
-			duplicate.setComputerPlayer(p.getKey(), true);			
+		// Configure the computer players
+		for (Player.Direction d : Player.Direction.values()) {
+			if (isComputerPlayer(d)) {
+				duplicate.setComputerPlayer(d, true);
+			}
 		}
 		
 		// Update the various displays to signal who's go it is and/or to
@@ -0,0 +1,106 @@
+package cards.util;
+
+import java.util.Random;
+
+import cards.core.Card;
+import cards.core.IllegalMove;
+import cards.core.Player;
+import cards.core.Trick;
+import cards.variations.ClassicWhist;
+import cards.variations.KnockOutWhist;
+
+/**
+ * Checks that FastSimpleComputerPlayer makes exactly the same decisions as
+ * SimpleComputerPlayer. Games of Classic and Knock-Out Whist are played
+ * from seeded deals, and at every turn both players are asked for a card.
+ * Every third card played is chosen at random instead, so that the games
+ * wander into situations which simple players on their own never reach.
+ * Any difference is printed, and the check fails with exit status 1.
+ *
+ * Usage: <code>java cards.util.FastSimpleCheck games</code>
+ *
+ */
+public final class FastSimpleCheck {
+	private static final int MAX_REPORTED = 10;
+
+	private FastSimpleCheck() {
+	}
+
+	public static void main(String[] args) throws IllegalMove {
+		if (args.length != 1) {
+			System.err.println("Usage: java cards.util.FastSimpleCheck games");
+			System.exit(1);
+		}
+		int games = Integer.parseInt(args[0]);
+		long decisions = 0;
+		long mismatches = 0;
+		for (int g = 0; g != games; ++g) {
+			long[] counts = play(g);
+			decisions += counts[0];
+			mismatches += counts[1];
+		}
+		System.out.println("Compared " + decisions + " decisions in " + games
+				+ " games: " + mismatches + " differed");
+		if (mismatches != 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Play the given game, comparing the two players at every turn.
+	 *
+	 * @param seed
+	 * @return the number of decisions compared and the number which differed.
+	 * @throws IllegalMove
+	 */
+	private static long[] play(int seed) throws IllegalMove {
+		AbstractCardGame game = seed % 3 == 0 ? new KnockOutWhist()
+				: new ClassicWhist();
+		Random random = new Random(seed);
+		GameEngine engine = new GameEngine(game, random);
+		AbstractComputerPlayer[] simple = new AbstractComputerPlayer[4];
+		AbstractComputerPlayer[] fast = new AbstractComputerPlayer[4];
+		for (Player.Direction d : Player.Direction.values()) {
+			simple[d.ordinal()] = new SimpleComputerPlayer(game.getPlayer(d));
+			fast[d.ordinal()] = new FastSimpleComputerPlayer(game.getPlayer(d));
+		}
+		long[] counts = new long[2];
+		engine.startHand();
+		while (true) {
+			Trick trick = game.getTrick();
+			Player.Direction next = trick.getNextToPlay();
+			if (next == null) {
+				GameEngine.Outcome outcome = engine.finishRound();
+				if (outcome == GameEngine.Outcome.GAME_OVER) {
+					return counts;
+				} else if (outcome == GameEngine.Outcome.NEXT_HAND) {
+					engine.startHand();
+				} else {
+					engine.startRound();
+				}
+				continue;
+			}
+			Card expected = simple[next.ordinal()].getNextCard(trick);
+			Card actual = fast[next.ordinal()].getNextCard(trick);
+			counts[0]++;
+			if (expected != actual) {
+				if (counts[1]++ < MAX_REPORTED) {
+					System.out.println("Game " + seed + ": " + next
+							+ " holding " + game.getPlayer(next).getHand().cardsInHand()
+							+ " to " + trick.getCardsPlayed() + ", trumps "
+							+ trick.getTrumps() + ", played " + actual
+							+ " instead of " + expected);
+				}
+			}
+			Card card = expected;
+			if (random.nextInt(3) == 0) {
+				long legal = game.legalMoves(next);
+				for (int i = random.nextInt(Long.bitCount(legal)); i != 0; --i) {
+					legal &= legal - 1;
+				}
+				card = Card.ofIndex(Long.numberOfTrailingZeros(legal));
+			}
+			game.play(next, card);
+		}
+	}
+}